@@ -0,0 +1,180 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An evaluator answering from a FitnessCache the layouts it has already seen, in any turbine order, and
+ * delegating the others to another evaluator. The layouts found in the cache are not evaluated again and do
+ * not use any evaluation budget, so an optimizer re-evaluating survivors or producing duplicate children pays
+ * for each distinct layout once. The hit and miss counters of the cache tell how many evaluations it saved.
+ *
+ * The cache only keeps the global values of the results: getEnergyOutputs and getTurbineFitnesses compute
+ * the outputs of the last layout with the evaluator the first time they are called after evaluate, which is
+ * not counted as an evaluation. evaluateResult with outputs always evaluates.
+ */
+public class CachingLayoutEvaluator extends WindFarmLayoutEvaluator {
+
+	protected final WindFarmLayoutEvaluator evaluator;
+	protected final FitnessCache cache;
+
+	public CachingLayoutEvaluator(WindFarmLayoutEvaluator evaluator) {
+		this(evaluator, new FitnessCache());
+	}
+
+	/**
+	 * @param evaluator
+	 *            the evaluator of the layouts missing from the cache
+	 * @param cache
+	 *            the cache, which may be shared with other evaluators of the same scenario
+	 */
+	public CachingLayoutEvaluator(WindFarmLayoutEvaluator evaluator, FitnessCache cache) {
+		this.evaluator = evaluator;
+		this.cache = cache;
+	}
+
+	public WindFarmLayoutEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	public FitnessCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public double evaluate(double[][] layout) {
+		LayoutKey key = new LayoutKey(layout);
+		EvaluationResult result = cache.get(key);
+		if (result == null) {
+			result = evaluator.evaluateResult(layout, false);
+			cache.put(key, result);
+		}
+		return keepLastEvaluation(layout, result).getEnergyCost();
+	}
+
+	@Override
+	public EvaluationResult evaluateResult(double[][] layout, boolean withOutputs) {
+		LayoutKey key = new LayoutKey(layout);
+		EvaluationResult result = withOutputs ? null : cache.get(key);
+		if (result == null) {
+			result = evaluator.evaluateResult(layout, withOutputs);
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, boolean withOutputs) {
+		LayoutKey key = new LayoutKey(layout);
+		EvaluationResult result = withOutputs ? null : cache.get(key);
+		if (result == null) {
+			result = evaluator.evaluateChecked(layout, withOutputs);
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Answers from the cache when it holds the layout, the CUT_OFF results are not cached by FitnessCache.
+	 */
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, double cutoffCoE) {
+		LayoutKey key = new LayoutKey(layout);
+		EvaluationResult result = cache.get(key);
+		if (result == null) {
+			result = evaluator.evaluateChecked(layout, cutoffCoE);
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Answers the cached layouts of the batch and sends the others, each distinct layout once, to the batch
+	 * evaluation of the evaluator, which alone uses the budget.
+	 */
+	@Override
+	public List<EvaluationResult> evaluateBatch(List<double[][]> layouts, EvaluationBudget budget,
+			double cutoffCoE) {
+		EvaluationResult[] results = new EvaluationResult[layouts.size()];
+		LayoutKey[] keys = new LayoutKey[results.length];
+		int[] missIndex = new int[results.length]; // index in misses of the layouts to evaluate
+		HashMap<LayoutKey, Integer> pending = new HashMap<>();
+		ArrayList<double[][]> misses = new ArrayList<>();
+		for (int i = 0; i < results.length; i++) {
+			keys[i] = new LayoutKey(layouts.get(i));
+			Integer duplicate = pending.get(keys[i]);
+			if (duplicate != null) {
+				cache.countHit();
+				missIndex[i] = duplicate;
+				continue;
+			}
+			results[i] = cache.get(keys[i]);
+			if (results[i] == null) {
+				missIndex[i] = misses.size();
+				pending.put(keys[i], misses.size());
+				misses.add(layouts.get(i));
+			}
+		}
+
+		List<EvaluationResult> evaluated = evaluator.evaluateBatch(misses, budget, cutoffCoE);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				results[i] = evaluated.get(missIndex[i]);
+				cache.put(keys[i], results[i]);
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return evaluator.getExecutor();
+	}
+
+	/**
+	 * Sets the executor of the evaluator, which runs the evaluations of the batches.
+	 */
+	@Override
+	public void setExecutor(Executor executor) {
+		evaluator.setExecutor(executor);
+	}
+
+	@Override
+	protected EvaluationResult calculateOutputs(double[][] layout) {
+		return evaluator.calculateOutputs(layout);
+	}
+
+	@Override
+	public boolean checkConstraint(double[][] layout) {
+		return evaluator.checkConstraint(layout);
+	}
+
+	@Override
+	public double getTurbineRadius() {
+		return evaluator.getTurbineRadius();
+	}
+
+	@Override
+	public double getFarmWidth() {
+		return evaluator.getFarmWidth();
+	}
+
+	@Override
+	public double getFarmHeight() {
+		return evaluator.getFarmHeight();
+	}
+
+	@Override
+	public double getMinDistance() {
+		return evaluator.getMinDistance();
+	}
+
+	@Override
+	public double[][] getObstacles() {
+		return evaluator.getObstacles();
+	}
+
+}
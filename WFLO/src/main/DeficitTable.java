@@ -0,0 +1,72 @@
+package main;
+
+/**
+ * The squared velocity deficit caused by a turbine, tabulated over the offset of the waked turbine in the frame
+ * of the wind direction: s along the wind, from the apex of the wake cone at -R/k to the diagonal of the farm,
+ * and |t| across it, up to the half width of the cone at the diagonal. The deficit only depends on that offset,
+ * so one table serves every direction. Between the points of the grid the value is interpolated bilinearly,
+ * which blurs the edge of the cone over one cell; beyond the table the deficit is 0.
+ */
+final class DeficitTable {
+
+	private final double step;
+	private final double inverseStep;
+	private final double minS; // s of the first column
+	private final int columns; // points along s
+	private final int rows; // points along |t|
+	private final double[] values; // squared deficit at s = minS + c step, |t| = r step, at r * columns + c
+
+	/**
+	 * @param scenario
+	 *            the scenario whose wake parameters and farm size are tabulated
+	 * @param resolution
+	 *            the number of grid steps per rotor radius R
+	 */
+	DeficitTable(WindScenario scenario, int resolution) {
+		step = scenario.R / resolution;
+		inverseStep = 1 / step;
+		minS = -scenario.rkRatio;
+		double diagonal = Math.sqrt(scenario.width * scenario.width + scenario.height * scenario.height);
+		columns = (int) Math.ceil((diagonal - minS) * inverseStep) + 2;
+		rows = (int) Math.ceil((scenario.k * diagonal + scenario.R) * inverseStep) + 2;
+		values = new double[rows * columns];
+		for (int r = 0; r < rows; r++) {
+			double t = r * step;
+			for (int c = 0; c < columns; c++) {
+				double s = minS + c * step;
+				if (t < scenario.k * s + scenario.R) {
+					double d = 1.0 + scenario.krRatio * Math.abs(s);
+					double curDef = scenario.trans_CT / (d * d);
+					values[r * columns + c] = curDef * curDef;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the interpolated squared deficit at the offset (s, t) of the waked turbine from the waking one.
+	 */
+	double lookup(double s, double t) {
+		double u = (s - minS) * inverseStep;
+		double v = Math.abs(t) * inverseStep;
+		if (u < 0 || v >= rows - 1 || u >= columns - 1) {
+			return 0;
+		}
+		int c = (int) u;
+		int r = (int) v;
+		double fu = u - c;
+		double fv = v - r;
+		int index = r * columns + c;
+		double low = values[index] + fu * (values[index + 1] - values[index]);
+		double high = values[index + columns] + fu * (values[index + columns + 1] - values[index + columns]);
+		return low + fv * (high - low);
+	}
+
+	/**
+	 * Returns the number of values of the table.
+	 */
+	int size() {
+		return values.length;
+	}
+
+}
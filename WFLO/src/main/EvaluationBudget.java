@@ -0,0 +1,170 @@
+package main;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The number of evaluations one optimisation run may spend. Each run gets its own budget, so several runs can
+ * share a JVM, and an evaluator, without spending each other's evaluations.
+ * 
+ * An evaluation must be granted by tryConsume before it is performed. A limited budget reserves its
+ * evaluations with a compare-and-set on one counter, which happens once per evaluation or once per batch and is
+ * negligible next to the evaluation itself; an unlimited budget only counts them in a LongAdder. The callbacks
+ * registered with onExhausted are called once, by the thread that takes the last evaluation.
+ * 
+ * The class also keeps the global number of evaluations of the JVM, which the evaluators record, and the rate
+ * of evaluations per second for monitoring.
+ */
+public class EvaluationBudget {
+
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	// global statistics, for all the evaluators of the JVM
+	private static final LongAdder totalEvaluations = new LongAdder();
+	private static final LongAdder partialEvaluations = new LongAdder();
+	private static volatile long statisticsStart = System.nanoTime();
+	private static volatile long statisticsOffset = 0;
+
+	private final long limit;
+	private final AtomicLong reserved; // used by limited budgets
+	private final LongAdder counted; // used by unlimited budgets
+	private final AtomicBoolean exhausted;
+	private final List<Runnable> exhaustionCallbacks;
+
+	public EvaluationBudget(long limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Negative evaluation budget: " + limit);
+		}
+		this.limit = limit;
+		this.reserved = new AtomicLong();
+		this.counted = new LongAdder();
+		this.exhausted = new AtomicBoolean(false);
+		this.exhaustionCallbacks = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Returns a budget that grants every evaluation.
+	 */
+	public static EvaluationBudget unlimited() {
+		return new EvaluationBudget(UNLIMITED);
+	}
+
+	/**
+	 * Asks for one evaluation.
+	 * @return true if the evaluation is granted and may be performed
+	 */
+	public boolean tryConsume() {
+		return tryConsume(1) == 1;
+	}
+
+	/**
+	 * Asks for count evaluations at once. Either all of them or the remaining part of the budget is granted,
+	 * atomically, so concurrent callers never exceed the limit together.
+	 * @return the number of evaluations granted, between 0 and count
+	 */
+	public int tryConsume(int count) {
+		if (count <= 0) {
+			return 0;
+		}
+		if (limit == UNLIMITED) {
+			counted.add(count);
+			return count;
+		}
+		long used;
+		long granted;
+		do {
+			used = reserved.get();
+			granted = Math.min(count, limit - used);
+			if (granted <= 0) {
+				return 0;
+			}
+		} while (!reserved.compareAndSet(used, used + granted));
+
+		if (used + granted == limit && exhausted.compareAndSet(false, true)) {
+			for (Runnable callback : exhaustionCallbacks) {
+				callback.run();
+			}
+		}
+		return (int) granted;
+	}
+
+	/**
+	 * Registers a callback run once, when the last evaluation of the budget is granted.
+	 */
+	public void onExhausted(Runnable callback) {
+		exhaustionCallbacks.add(callback);
+		if (limit == 0 && exhausted.compareAndSet(false, true)) {
+			callback.run();
+		}
+	}
+
+	public boolean isExhausted() {
+		return getRemaining() <= 0;
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns the number of evaluations granted so far.
+	 */
+	public long getUsed() {
+		return limit == UNLIMITED ? counted.sum() : reserved.get();
+	}
+
+	public long getRemaining() {
+		return limit == UNLIMITED ? UNLIMITED : limit - reserved.get();
+	}
+
+	/**
+	 * Records one evaluation in the global statistics. Called by the evaluators.
+	 */
+	static void recordEvaluation() {
+		totalEvaluations.increment();
+	}
+
+	/**
+	 * Records, in the global statistics, that an evaluation already recorded stopped before all the directions
+	 * were computed. Called by the evaluators.
+	 */
+	static void recordPartialEvaluation() {
+		partialEvaluations.increment();
+	}
+
+	/**
+	 * Returns the number of evaluations performed by all the evaluators of the JVM.
+	 */
+	public static long getTotalEvaluations() {
+		return totalEvaluations.sum();
+	}
+
+	/**
+	 * Returns how many of the evaluations of getTotalEvaluations were cut off before all the directions were
+	 * computed.
+	 */
+	public static long getPartialEvaluations() {
+		return partialEvaluations.sum();
+	}
+
+	/**
+	 * Returns the global number of evaluations per second since the JVM started or since the last call to
+	 * resetStatistics.
+	 */
+	public static double getEvaluationsPerSecond() {
+		double seconds = (System.nanoTime() - statisticsStart) / 1e9;
+		return seconds <= 0 ? 0 : (totalEvaluations.sum() - statisticsOffset) / seconds;
+	}
+
+	/**
+	 * Restarts the measure of getEvaluationsPerSecond. The total number of evaluations is not reset.
+	 */
+	public static void resetStatistics() {
+		statisticsOffset = totalEvaluations.sum();
+		statisticsStart = System.nanoTime();
+	}
+
+}
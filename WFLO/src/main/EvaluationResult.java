@@ -0,0 +1,152 @@
+package main;
+
+/**
+ * The outcome of the evaluation of one layout: its cost of energy, wake free ratio and energy output, and,
+ * when they were requested, the energy outputs per turbine and per direction. Instances are immutable and can
+ * be shared between threads; the arrays returned by the getters are copies.
+ */
+public final class EvaluationResult {
+
+	public enum Status {
+		EVALUATED, // the layout is valid and has been evaluated
+		INFEASIBLE, // the layout violates the constraints of the farm
+		SKIPPED, // the layout is valid but the evaluation budget was exhausted
+		CUT_OFF // the layout is valid but its evaluation stopped once it could not beat the cut-off
+	}
+
+	/**
+	 * The result of a layout that violates the constraints of the farm.
+	 */
+	public static final EvaluationResult INFEASIBLE = new EvaluationResult(Status.INFEASIBLE, Double.MAX_VALUE, 0, 0,
+			null, 0);
+
+	/**
+	 * The result of a valid layout that was not evaluated because the budget was exhausted.
+	 */
+	public static final EvaluationResult SKIPPED = new EvaluationResult(Status.SKIPPED, Double.MAX_VALUE, 0, 0, null,
+			0);
+
+	private final Status status;
+	private final double energyCost;
+	private final double wakeFreeRatio;
+	private final double energyOutput;
+	private final double[][] energyOutputs; // per direction and per turbine, null if not requested
+	private final double wakeFreeEnergy;
+
+	/**
+	 * @param energyOutputs
+	 *            the energy per direction and per turbine, owned by the result from now on; may be null
+	 */
+	EvaluationResult(Status status, double energyCost, double wakeFreeRatio, double energyOutput,
+			double[][] energyOutputs, double wakeFreeEnergy) {
+		this.status = status;
+		this.energyCost = energyCost;
+		this.wakeFreeRatio = wakeFreeRatio;
+		this.energyOutput = energyOutput;
+		this.energyOutputs = energyOutputs;
+		this.wakeFreeEnergy = wakeFreeEnergy;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns true if the layout satisfies the constraints of the farm.
+	 */
+	public boolean isFeasible() {
+		return status != Status.INFEASIBLE;
+	}
+
+	/**
+	 * Returns true if the layout has been evaluated, i.e. the energy values are meaningful.
+	 */
+	public boolean isEvaluated() {
+		return status == Status.EVALUATED;
+	}
+
+	/**
+	 * Returns the cost of energy, max_double if the layout is invalid. For a CUT_OFF result it is a lower bound
+	 * of the cost of energy, and the wake free ratio and energy output are upper bounds.
+	 */
+	public double getEnergyCost() {
+		return energyCost;
+	}
+
+	public double getWakeFreeRatio() {
+		return wakeFreeRatio;
+	}
+
+	/**
+	 * Returns the global energy output of the layout.
+	 */
+	public double getEnergyOutput() {
+		return energyOutput;
+	}
+
+	/**
+	 * Returns true if the per turbine and per direction outputs were requested and the layout is valid.
+	 */
+	public boolean hasOutputs() {
+		return energyOutputs != null;
+	}
+
+	/**
+	 * Returns this result without the per turbine and per direction outputs.
+	 */
+	EvaluationResult withoutOutputs() {
+		if (energyOutputs == null) {
+			return this;
+		}
+		return new EvaluationResult(status, energyCost, wakeFreeRatio, energyOutput, null, wakeFreeEnergy);
+	}
+
+	/**
+	 * Returns the energy outputs per direction and per turbine, null if they were not requested.
+	 */
+	public double[][] getEnergyOutputs() {
+		if (energyOutputs == null) {
+			return null;
+		}
+		double[][] copy = new double[energyOutputs.length][];
+		for (int thets = 0; thets < energyOutputs.length; thets++) {
+			copy[thets] = energyOutputs[thets].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the wake free ratio per turbine, null if the outputs were not requested.
+	 */
+	public double[] getTurbineFitnesses() {
+		if (energyOutputs == null) {
+			return null;
+		}
+		double res[] = new double[energyOutputs[0].length];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = 0;
+			for (int j = 0; j < energyOutputs.length; j++) {
+				res[i] += energyOutputs[j][i];
+			}
+			res[i] = res[i] / wakeFreeEnergy;
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the energy output per direction, null if the outputs were not requested.
+	 */
+	public double[] getDirectionOutputs() {
+		if (energyOutputs == null) {
+			return null;
+		}
+		double res[] = new double[energyOutputs.length];
+		for (int thets = 0; thets < energyOutputs.length; thets++) {
+			for (int i = 0; i < energyOutputs[thets].length; i++) {
+				res[thets] += energyOutputs[thets][i];
+			}
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,589 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A layout kept together with its wake state, so that moving, adding or removing one turbine is evaluated in
+ * O(n*directions) instead of the O(n^2*directions) of a full evaluation. It is the building block of local
+ * searches on large farms.
+ *
+ * For every turbine and direction the session keeps the sum of the squared velocity deficits caused by the
+ * other turbines, and the resulting energy. A change of turbine i subtracts the deficits of its old position
+ * from every other turbine, adds the ones of its new position, and sums the deficits seen by i again. The
+ * per pair deficits are not stored, they would take n^2*directions doubles (100 MB for 710 turbines), and
+ * are cheap to recompute from the coordinates. The constraints are followed the same way, as the number of
+ * turbines badly placed plus the number of pairs too close to each other.
+ *
+ * The changes made since the last commit are undone by rollback. The subtractions leave rounding errors in
+ * the sums. The number of turbines waking each turbine is kept along, so that a sum becomes exactly 0 when
+ * its last waker leaves, as in KusiakLayoutEvaluator.calculateContributions, and every resyncInterval commits
+ * the whole state is computed again from scratch, which makes the result exactly the one of
+ * KusiakLayoutEvaluator.evaluate. The operations of a session do not use any evaluation budget, the caller
+ * charges them as it sees fit. A session is not thread safe.
+ *
+ * The deficits are computed pair by pair with the cone test of WakeSweep, so a session cannot follow an
+ * evaluator using the far field approximation, nor one reading its deficit table without the sweep, beyond
+ * the reach of that test; such evaluators are refused.
+ */
+public class EvaluationSession {
+
+	public static final int DEFAULT_RESYNC_INTERVAL = 64;
+
+	private final KusiakLayoutEvaluator evaluator;
+	private final WindScenario scenario;
+	private final WakeSweep sweep;
+	private final double reach; // same bound as the sweep, with the same slack
+	private int resyncInterval;
+	private int commits; // commits since the last resync
+
+	private double[] x;
+	private double[] y;
+	private int n;
+	private double[][] deficits; // sum of the squared velocity deficits per direction and per turbine
+	private int[][] wakers; // number of turbines waking each turbine, per direction
+	private double[][] energies; // energy per direction and per turbine
+	private boolean[][] dirty; // energies to compute again from the deficits
+	private int violations; // turbines outside of the farm or in an obstacle, plus pairs too close
+	private double energyCapture;
+
+	// state at the last commit, valid when modified is true
+	private boolean modified;
+	private double[] savedX;
+	private double[] savedY;
+	private int savedN;
+	private double[][] savedDeficits;
+	private int[][] savedWakers;
+	private double[][] savedEnergies;
+	private int savedViolations;
+	private double savedEnergyCapture;
+
+	public EvaluationSession(KusiakLayoutEvaluator evaluator, double[][] layout) {
+		if (!isSupported(evaluator)) {
+			throw new IllegalArgumentException("A session cannot follow the deficits of this evaluator");
+		}
+		this.evaluator = evaluator;
+		this.scenario = evaluator.scenario;
+		this.sweep = new WakeSweep();
+		this.reach = WakeSweep.reach(scenario);
+		this.resyncInterval = DEFAULT_RESYNC_INTERVAL;
+		int directions = scenario.thetas.length;
+		int capacity = Math.max(16, layout.length);
+		x = new double[capacity];
+		y = new double[capacity];
+		deficits = new double[directions][capacity];
+		wakers = new int[directions][capacity];
+		energies = new double[directions][capacity];
+		dirty = new boolean[directions][capacity];
+		savedX = new double[capacity];
+		savedY = new double[capacity];
+		savedDeficits = new double[directions][capacity];
+		savedWakers = new int[directions][capacity];
+		savedEnergies = new double[directions][capacity];
+		for (int i = 0; i < layout.length; i++) {
+			x[i] = layout[i][0];
+			y[i] = layout[i][1];
+		}
+		n = layout.length;
+		resync();
+	}
+
+	/**
+	 * Creates a copy of another session without uncommitted changes, with the same evaluator and resync
+	 * interval.
+	 */
+	public EvaluationSession(EvaluationSession other) {
+		this.evaluator = other.evaluator;
+		this.scenario = other.scenario;
+		this.sweep = new WakeSweep();
+		this.reach = other.reach;
+		this.resyncInterval = other.resyncInterval;
+		if (other.modified) {
+			throw new IllegalStateException("Cannot copy a session with uncommitted changes");
+		}
+		int directions = other.deficits.length;
+		int capacity = other.x.length;
+		n = other.n;
+		x = other.x.clone();
+		y = other.y.clone();
+		deficits = new double[directions][];
+		wakers = new int[directions][];
+		energies = new double[directions][];
+		dirty = new boolean[directions][capacity];
+		savedDeficits = new double[directions][capacity];
+		savedWakers = new int[directions][capacity];
+		savedEnergies = new double[directions][capacity];
+		for (int thets = 0; thets < directions; thets++) {
+			deficits[thets] = other.deficits[thets].clone();
+			wakers[thets] = other.wakers[thets].clone();
+			energies[thets] = other.energies[thets].clone();
+		}
+		savedX = new double[capacity];
+		savedY = new double[capacity];
+		violations = other.violations;
+		energyCapture = other.energyCapture;
+		commits = other.commits;
+	}
+
+	/**
+	 * Moves turbine i to (x, y) and returns the cost of energy of the new layout.
+	 */
+	public double move(int i, double x, double y) {
+		checkIndex(i);
+		save();
+		double oldX = this.x[i];
+		double oldY = this.y[i];
+		violations -= countViolations(i, oldX, oldY);
+		removeWakes(i, oldX, oldY);
+		this.x[i] = x;
+		this.y[i] = y;
+		addWakes(i, x, y);
+		violations += countViolations(i, x, y);
+		updateTurbine(i);
+		return updateEnergy();
+	}
+
+	/**
+	 * Adds a turbine at (x, y), at index size()-1, and returns the cost of energy of the new layout.
+	 */
+	public double add(double x, double y) {
+		save();
+		addTurbine(x, y);
+		return updateEnergy();
+	}
+
+	/**
+	 * Removes turbine i and returns the cost of energy of the new layout. The last turbine takes the index i.
+	 */
+	public double remove(int i) {
+		checkIndex(i);
+		save();
+		removeTurbine(i);
+		return updateEnergy();
+	}
+
+	/**
+	 * Turns the layout of the session into the given one, whatever the order of its turbines, by removing the
+	 * turbines that are not in it and adding the new ones. The turbines are matched by their coordinates, so
+	 * the cost grows with the number of differences, not with the size of the layout. Nothing is changed if
+	 * there are more than maxChanges differences.
+	 * 
+	 * @return the number of removed and added turbines, or -1 if there are more than maxChanges
+	 */
+	public int update(double[][] layout, int maxChanges) {
+		Integer[] current = sortedIndices(x, y, n);
+		double[] lx = new double[layout.length];
+		double[] ly = new double[layout.length];
+		for (int i = 0; i < layout.length; i++) {
+			lx[i] = layout[i][0];
+			ly[i] = layout[i][1];
+		}
+		Integer[] target = sortedIndices(lx, ly, layout.length);
+
+		// merge both sorted sets of coordinates
+		int[] removed = new int[n];
+		int[] added = new int[layout.length];
+		int removedCount = 0;
+		int addedCount = 0;
+		int i = 0;
+		int j = 0;
+		while (i < current.length || j < target.length) {
+			int cmp;
+			if (i == current.length) {
+				cmp = 1;
+			} else if (j == target.length) {
+				cmp = -1;
+			} else {
+				cmp = compare(x[current[i]], y[current[i]], lx[target[j]], ly[target[j]]);
+			}
+			if (cmp == 0) {
+				i++;
+				j++;
+			} else if (cmp < 0) {
+				removed[removedCount++] = current[i++];
+			} else {
+				added[addedCount++] = target[j++];
+			}
+			if (removedCount + addedCount > maxChanges) {
+				return -1;
+			}
+		}
+
+		save();
+		// removing the highest indices first, the turbine moved into a removed index is never to remove
+		Arrays.sort(removed, 0, removedCount);
+		for (int r = removedCount - 1; r >= 0; r--) {
+			removeTurbine(removed[r]);
+		}
+		for (int a = 0; a < addedCount; a++) {
+			addTurbine(lx[added[a]], ly[added[a]]);
+		}
+		updateEnergy();
+		return removedCount + addedCount;
+	}
+
+	/**
+	 * Keeps the changes made since the last commit.
+	 */
+	public void commit() {
+		modified = false;
+		commits++;
+		if (commits >= resyncInterval) {
+			resync();
+		}
+	}
+
+	/**
+	 * Undoes the changes made since the last commit.
+	 */
+	public void rollback() {
+		if (!modified) {
+			return;
+		}
+		n = savedN;
+		System.arraycopy(savedX, 0, x, 0, n);
+		System.arraycopy(savedY, 0, y, 0, n);
+		for (int thets = 0; thets < deficits.length; thets++) {
+			System.arraycopy(savedDeficits[thets], 0, deficits[thets], 0, n);
+			System.arraycopy(savedWakers[thets], 0, wakers[thets], 0, n);
+			System.arraycopy(savedEnergies[thets], 0, energies[thets], 0, n);
+		}
+		violations = savedViolations;
+		energyCapture = savedEnergyCapture;
+		modified = false;
+	}
+
+	/**
+	 * Computes the wake state and the constraints of the current layout from scratch, dropping the rounding
+	 * errors accumulated by the incremental updates. The changes since the last commit are committed.
+	 */
+	public void resync() {
+		modified = false;
+		commits = 0;
+		boolean useTable = evaluator.energyMode.equals(KusiakLayoutEvaluator._WBLCDF_TABLE);
+		boolean useResponse = evaluator.energyMode.equals(KusiakLayoutEvaluator._RESPONSE_TABLE);
+		for (int thets = 0; thets < deficits.length; thets++) {
+			double[] row = energies[thets];
+			sweep.computeDirection(evaluator, x, y, n, thets, row, wakers[thets]);
+			for (int turb = 0; turb < n; turb++) {
+				deficits[thets][turb] = row[turb] * row[turb];
+				row[turb] = evaluator.calculateDeficitEnergy(row[turb], thets, useTable, useResponse);
+				dirty[thets][turb] = false;
+			}
+		}
+		violations = 0;
+		for (int i = 0; i < n; i++) {
+			if (!evaluator.checkPosition(x[i], y[i])) {
+				violations++;
+			}
+			for (int j = 0; j < i; j++) {
+				if (isTooClose(x[i], y[i], x[j], y[j])) {
+					violations++;
+				}
+			}
+		}
+		updateEnergy();
+	}
+
+	/**
+	 * Returns whether a session gets the deficits of the evaluator with its current wake options.
+	 */
+	public static boolean isSupported(KusiakLayoutEvaluator evaluator) {
+		if (evaluator.isWakeSweep()) {
+			return evaluator.getFarFieldRatio() == 0;
+		}
+		return evaluator.getDeficitTableResolution() == 0;
+	}
+
+	public boolean isFeasible() {
+		return violations == 0;
+	}
+
+	/**
+	 * Returns the cost of energy of the current layout, Double.MAX_VALUE if it violates the constraints.
+	 */
+	public double getEnergyCost() {
+		double wakeFreeRatio = getWakeFreeRatio();
+		if (!isFeasible() || wakeFreeRatio <= 0) {
+			return Double.MAX_VALUE;
+		}
+		return evaluator.calculateEnergyCost(n, wakeFreeRatio);
+	}
+
+	public double getEnergyOutput() {
+		return energyCapture;
+	}
+
+	public double getWakeFreeRatio() {
+		return n == 0 ? 0 : energyCapture / (scenario.wakeFreeEnergy * n);
+	}
+
+	/**
+	 * Returns the energy of turbine i in direction thets.
+	 */
+	public double getEnergy(int i, int thets) {
+		checkIndex(i);
+		return energies[thets][i];
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public double getX(int i) {
+		checkIndex(i);
+		return x[i];
+	}
+
+	public double getY(int i) {
+		checkIndex(i);
+		return y[i];
+	}
+
+	/**
+	 * Returns a copy of the current layout.
+	 */
+	public double[][] getLayout() {
+		double[][] layout = new double[n][2];
+		for (int i = 0; i < n; i++) {
+			layout[i][0] = x[i];
+			layout[i][1] = y[i];
+		}
+		return layout;
+	}
+
+	public int getResyncInterval() {
+		return resyncInterval;
+	}
+
+	/**
+	 * Sets the number of commits after which the whole state is computed again from scratch.
+	 */
+	public void setResyncInterval(int resyncInterval) {
+		if (resyncInterval < 1) {
+			throw new IllegalArgumentException("Resync interval must be positive: " + resyncInterval);
+		}
+		this.resyncInterval = resyncInterval;
+	}
+
+	/**
+	 * Saves the committed state before its first change.
+	 */
+	private void save() {
+		if (modified) {
+			return;
+		}
+		savedN = n;
+		System.arraycopy(x, 0, savedX, 0, n);
+		System.arraycopy(y, 0, savedY, 0, n);
+		for (int thets = 0; thets < deficits.length; thets++) {
+			System.arraycopy(deficits[thets], 0, savedDeficits[thets], 0, n);
+			System.arraycopy(wakers[thets], 0, savedWakers[thets], 0, n);
+			System.arraycopy(energies[thets], 0, savedEnergies[thets], 0, n);
+		}
+		savedViolations = violations;
+		savedEnergyCapture = energyCapture;
+		modified = true;
+	}
+
+	private void addTurbine(double xi, double yi) {
+		ensureCapacity(n + 1);
+		int i = n;
+		x[i] = xi;
+		y[i] = yi;
+		n++;
+		addWakes(i, xi, yi);
+		violations += countViolations(i, xi, yi);
+		updateTurbine(i);
+	}
+
+	/**
+	 * Removes turbine i, the last turbine takes its index.
+	 */
+	private void removeTurbine(int i) {
+		double oldX = x[i];
+		double oldY = y[i];
+		violations -= countViolations(i, oldX, oldY);
+		removeWakes(i, oldX, oldY);
+		int last = n - 1;
+		x[i] = x[last];
+		y[i] = y[last];
+		for (int thets = 0; thets < deficits.length; thets++) {
+			deficits[thets][i] = deficits[thets][last];
+			wakers[thets][i] = wakers[thets][last];
+			energies[thets][i] = energies[thets][last];
+			dirty[thets][i] = dirty[thets][last];
+			dirty[thets][last] = false;
+		}
+		n--;
+	}
+
+	/**
+	 * Subtracts the wakes of turbine i, at (xi, yi), from the deficits of the other turbines.
+	 */
+	private void removeWakes(int i, double xi, double yi) {
+		for (int thets = 0; thets < deficits.length; thets++) {
+			double[] row = deficits[thets];
+			for (int j = 0; j < n; j++) {
+				if (j != i) {
+					double deficit = squaredDeficit(x[j], y[j], xi, yi, thets);
+					if (deficit > 0) {
+						row[j] = --wakers[thets][j] == 0 ? 0 : Math.max(0, row[j] - deficit);
+						dirty[thets][j] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the wakes of turbine i, at (xi, yi), to the deficits of the other turbines.
+	 */
+	private void addWakes(int i, double xi, double yi) {
+		for (int thets = 0; thets < deficits.length; thets++) {
+			double[] row = deficits[thets];
+			for (int j = 0; j < n; j++) {
+				if (j != i) {
+					double deficit = squaredDeficit(x[j], y[j], xi, yi, thets);
+					if (deficit > 0) {
+						row[j] += deficit;
+						wakers[thets][j]++;
+						dirty[thets][j] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sums the deficits seen by turbine i again.
+	 */
+	private void updateTurbine(int i) {
+		for (int thets = 0; thets < deficits.length; thets++) {
+			double velDef = 0;
+			int count = 0;
+			for (int j = 0; j < n; j++) {
+				if (j != i) {
+					double deficit = squaredDeficit(x[i], y[i], x[j], y[j], thets);
+					if (deficit > 0) {
+						velDef += deficit;
+						count++;
+					}
+				}
+			}
+			deficits[thets][i] = velDef;
+			wakers[thets][i] = count;
+			dirty[thets][i] = true;
+		}
+	}
+
+	/**
+	 * Computes the energies whose deficit changed, once whatever the number of changes, sums the energies in
+	 * the order of KusiakLayoutEvaluator.calculateEnergy and returns the cost of energy.
+	 */
+	private double updateEnergy() {
+		boolean useTable = evaluator.energyMode.equals(KusiakLayoutEvaluator._WBLCDF_TABLE);
+		boolean useResponse = evaluator.energyMode.equals(KusiakLayoutEvaluator._RESPONSE_TABLE);
+		for (int thets = 0; thets < energies.length; thets++) {
+			for (int turb = 0; turb < n; turb++) {
+				if (dirty[thets][turb]) {
+					energies[thets][turb] = evaluator.calculateDeficitEnergy(Math.sqrt(deficits[thets][turb]), thets,
+							useTable, useResponse);
+					dirty[thets][turb] = false;
+				}
+			}
+		}
+		double sum = 0;
+		for (int turb = 0; turb < n; turb++) {
+			for (int thets = 0; thets < energies.length; thets++) {
+				sum += energies[thets][turb];
+			}
+		}
+		energyCapture = sum;
+		return getEnergyCost();
+	}
+
+	/**
+	 * Squared velocity deficit caused by a turbine at (xs, ys) on a turbine at (xt, yt), 0 if the latter is
+	 * out of the wake of the former.
+	 */
+	private double squaredDeficit(double xt, double yt, double xs, double ys, int thets) {
+		// the cone test of WakeSweep in the rotated frame drops most pairs before the exact test
+		double cos = scenario.getCosMidThetas(thets);
+		double sin = scenario.getSinMidThetas(thets);
+		double dx = xs - xt;
+		double dy = ys - yt;
+		double ds = dx * cos + dy * sin;
+		double dt = -dx * sin + dy * cos;
+		if (dt + scenario.k * ds >= reach || dt - scenario.k * ds <= -reach) {
+			return 0;
+		}
+		return evaluator.calculateSquaredDeficit(xt, yt, xs, ys, thets);
+	}
+
+	/**
+	 * Returns the number of violations turbine i causes at (xi, yi): its own position and the pairs it forms.
+	 */
+	private int countViolations(int i, double xi, double yi) {
+		int count = evaluator.checkPosition(xi, yi) ? 0 : 1;
+		for (int j = 0; j < n; j++) {
+			if (j != i && isTooClose(xi, yi, x[j], y[j])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean isTooClose(double xi, double yi, double xj, double yj) {
+		double dx = xi - xj;
+		double dy = yi - yj;
+		// same comparison as SpacingGrid, NaN coordinates are caught by checkPosition
+		return dx * dx + dy * dy < scenario.minDist;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (x.length >= capacity) {
+			return;
+		}
+		int size = Math.max(capacity, 2 * x.length);
+		x = Arrays.copyOf(x, size);
+		y = Arrays.copyOf(y, size);
+		savedX = Arrays.copyOf(savedX, size);
+		savedY = Arrays.copyOf(savedY, size);
+		for (int thets = 0; thets < deficits.length; thets++) {
+			deficits[thets] = Arrays.copyOf(deficits[thets], size);
+			wakers[thets] = Arrays.copyOf(wakers[thets], size);
+			energies[thets] = Arrays.copyOf(energies[thets], size);
+			dirty[thets] = Arrays.copyOf(dirty[thets], size);
+			savedDeficits[thets] = Arrays.copyOf(savedDeficits[thets], size);
+			savedWakers[thets] = Arrays.copyOf(savedWakers[thets], size);
+			savedEnergies[thets] = Arrays.copyOf(savedEnergies[thets], size);
+		}
+	}
+
+	private static Integer[] sortedIndices(final double[] xs, final double[] ys, int count) {
+		Integer[] indices = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return EvaluationSession.compare(xs[a], ys[a], xs[b], ys[b]);
+			}
+		});
+		return indices;
+	}
+
+	private static int compare(double xa, double ya, double xb, double yb) {
+		int cmp = Double.compare(xa, xb);
+		return cmp != 0 ? cmp : Double.compare(ya, yb);
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= n) {
+			throw new IndexOutOfBoundsException("Turbine " + i + " of " + n);
+		}
+	}
+
+}
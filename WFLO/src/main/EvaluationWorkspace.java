@@ -0,0 +1,83 @@
+package main;
+
+/**
+ * The scratch buffers of one evaluation: the layout as flat coordinates, the energy per direction and per
+ * turbine, and the spacing grid and wake sweep buffers. KusiakLayoutEvaluator keeps one workspace per thread,
+ * and the buffers are only replaced when a layout does not fit in them.
+ */
+final class EvaluationWorkspace {
+
+	double[] x;
+	double[] y;
+	int n;
+	double[][] spe; // energy per direction and per turbine, deficits while they are computed
+	float[] fx; // single precision coordinates, filled by loadFloats
+	float[] fy;
+	boolean singlePrecision; // the deficits of the loaded layout are computed from fx and fy
+	double[] remainingBounds; // wake free energy of the directions not yet computed by a cut-off evaluation
+	final SpacingGrid spacingGrid;
+	final WakeSweep sweep;
+	final WakeQuadtree quadtree; // built for the far field approximation only
+
+	EvaluationWorkspace(double minDist) {
+		x = new double[0];
+		y = new double[0];
+		fx = new float[0];
+		fy = new float[0];
+		remainingBounds = new double[0];
+		spacingGrid = new SpacingGrid(minDist);
+		sweep = new WakeSweep();
+		quadtree = new WakeQuadtree();
+	}
+
+	void load(double[][] layout, int directions) {
+		ensureCapacity(layout.length, directions);
+		for (int i = 0; i < layout.length; i++) {
+			x[i] = layout[i][0];
+			y[i] = layout[i][1];
+		}
+		n = layout.length;
+		singlePrecision = false;
+	}
+
+	void load(double[] xs, double[] ys, int n, int directions) {
+		ensureCapacity(n, directions);
+		System.arraycopy(xs, 0, x, 0, n);
+		System.arraycopy(ys, 0, y, 0, n);
+		this.n = n;
+		singlePrecision = false;
+	}
+
+	/**
+	 * Copies the loaded coordinates into the single precision buffers, whose deficits are then computed from.
+	 */
+	void loadFloats() {
+		if (fx.length < n) {
+			fx = new float[x.length];
+			fy = new float[x.length];
+		}
+		for (int i = 0; i < n; i++) {
+			fx[i] = (float) x[i];
+			fy[i] = (float) y[i];
+		}
+		singlePrecision = true;
+	}
+
+	/**
+	 * Grows the coordinate buffers so that they can hold n turbines. The energy matrix is replaced when the
+	 * number of turbines changes, as its rows must have exactly n entries.
+	 */
+	private void ensureCapacity(int n, int directions) {
+		if (x.length < n) {
+			x = new double[n];
+			y = new double[n];
+		}
+		if (spe == null || spe.length != directions || spe[0].length != n) {
+			spe = new double[directions][n];
+		}
+		if (remainingBounds.length < directions + 1) {
+			remainingBounds = new double[directions + 1];
+		}
+	}
+
+}
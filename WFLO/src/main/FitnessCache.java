@@ -0,0 +1,123 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of evaluation results keyed by layout content. When it is full, the least recently used
+ * layout is evicted. Only the global values of the results are kept, not the outputs per turbine and per
+ * direction, and results of layouts skipped by a budget are never stored. The cache can be shared between
+ * threads and between evaluators of the same scenario.
+ */
+public class FitnessCache {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private final int capacity;
+	private final LinkedHashMap<LayoutKey, EvaluationResult> entries;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public FitnessCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of layouts kept
+	 */
+	public FitnessCache(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<LayoutKey, EvaluationResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<LayoutKey, EvaluationResult> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the result of the layout, or null if it is not cached. Counts a hit or a miss.
+	 */
+	public EvaluationResult get(LayoutKey key) {
+		EvaluationResult result;
+		synchronized (entries) {
+			result = entries.get(key);
+		}
+		if (result == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the result of the layout, without its outputs. Skipped results are ignored.
+	 */
+	public void put(LayoutKey key, EvaluationResult result) {
+		if (result.getStatus() == EvaluationResult.Status.SKIPPED
+				|| result.getStatus() == EvaluationResult.Status.CUT_OFF) {
+			return;
+		}
+		EvaluationResult stored = result.withoutOutputs();
+		synchronized (entries) {
+			entries.put(key, stored);
+		}
+	}
+
+	/**
+	 * Counts a hit for a layout found without looking up the cache, e.g. a duplicate within a batch.
+	 */
+	void countHit() {
+		hits.increment();
+	}
+
+	/**
+	 * Returns the number of lookups that found the layout, i.e. the evaluations saved by the cache.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the share of the lookups that found the layout, 0 before the first lookup.
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes every layout and resets the counters.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+		hits.reset();
+		misses.reset();
+	}
+
+}
@@ -1,5 +1,6 @@
 package main;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class GA {
@@ -26,6 +27,7 @@ public class GA {
 
     private void evaluate() {
         double minfit = Double.MAX_VALUE;
+        ArrayList<double[][]> layouts = new ArrayList<double[][]>();
         for (int p=0; p<num_pop; p++) {
             int nturbines=0;
             for (int i=0; i<grid.size(); i++) {
@@ -43,16 +45,13 @@ public class GA {
                     l_i++;
                 }
             }
-	    
-	    double coe;
-	    if (wfle.checkConstraint(layout)) {
-		wfle.evaluate(layout);
-		coe = wfle.getEnergyCost();
-	    } else {
-		coe = Double.MAX_VALUE;
-	    }
-
-            fits[p] = coe;
+            layouts.add(layout);
+        }
+
+        // the whole population is evaluated at once, concurrently on the executor of the evaluator
+        List<EvaluationResult> results = wfle.evaluateBatch(layouts);
+        for (int p=0; p<num_pop; p++) {
+            fits[p] = results.get(p).getEnergyCost();
             if (fits[p] < minfit) {
                 minfit = fits[p];
             }
@@ -0,0 +1,342 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a layout by placing turbines one by one on a grid of candidate sites, each time on the site where an
+ * extra turbine gains the most energy. The gain of a site is the energy of a turbine there, in the wakes of the
+ * turbines already placed, minus the energy these turbines would lose in its wakes. The sites outside the farm
+ * or in an obstacle are dropped, and the ones closer than the security distance of a placed turbine disabled,
+ * as checkConstraint does, so the layouts built are always valid.
+ *
+ * The gains are updated after each placement rather than recomputed: the squared deficits each site receives
+ * grow by the wake of the new turbine, and the loss a site would cause is corrected for the new turbine and
+ * for the turbines it wakes, whose deficits changed. The sites are updated in parallel on the fork/join pool of
+ * the evaluator, with its wake kernel. The energies are always read from the response tables of the scenario,
+ * as with KusiakLayoutEvaluator._RESPONSE_TABLE, whatever the energy mode of the evaluator: they only rank the
+ * sites, and the exact integration would make each placement tens of times slower. The energies computed here
+ * are not counted as evaluations.
+ */
+public class GreedyPlacement {
+
+	static final int SITE_GRAIN = 64; // sites updated by one fork/join leaf
+
+	protected final KusiakLayoutEvaluator evaluator;
+	private final WindScenario scenario;
+	private final int directions;
+	private final double reach;
+
+	// candidate sites
+	private final int sites;
+	private final double[] siteX;
+	private final double[] siteY;
+	private final boolean[] available;
+	private final double[] received; // squared deficits from the placed turbines, at site * directions + dir
+	private final double[] receivedEnergy; // energy of a turbine on each site
+	private final double[] castLoss; // energy the placed turbines would lose to a turbine on each site
+	private final double[] siteA; // cone coordinates of WakeSweep, at dir * sites + site
+	private final double[] siteB;
+
+	// placed turbines
+	private int count;
+	private double[] x;
+	private double[] y;
+	private double[] sums; // squared deficits, at turb * directions + dir
+	private double[] energies; // energy, same layout
+	private double[] turbA; // cone coordinates, same layout
+	private double[] turbB;
+
+	/**
+	 * Creates the sites of a square grid of the given step over the farm of the evaluator, starting at
+	 * (offsetX, offsetY), which can be used to build different layouts.
+	 */
+	public GreedyPlacement(KusiakLayoutEvaluator evaluator, double step, double offsetX, double offsetY) {
+		this.evaluator = evaluator;
+		scenario = evaluator.scenario;
+		directions = scenario.thetas.length;
+		reach = WakeSweep.reach(scenario);
+
+		int columns = (int) Math.floor((scenario.width - offsetX) / step) + 1;
+		int rows = (int) Math.floor((scenario.height - offsetY) / step) + 1;
+		double[] xs = new double[columns * rows];
+		double[] ys = new double[columns * rows];
+		int valid = 0;
+		for (int c = 0; c < columns; c++) {
+			for (int r = 0; r < rows; r++) {
+				double sx = offsetX + c * step;
+				double sy = offsetY + r * step;
+				if (evaluator.checkPosition(sx, sy)) {
+					xs[valid] = sx;
+					ys[valid] = sy;
+					valid++;
+				}
+			}
+		}
+		sites = valid;
+		siteX = Arrays.copyOf(xs, sites);
+		siteY = Arrays.copyOf(ys, sites);
+		available = new boolean[sites];
+		Arrays.fill(available, true);
+		received = new double[sites * directions];
+		receivedEnergy = new double[sites];
+		castLoss = new double[sites];
+		siteA = new double[directions * sites];
+		siteB = new double[directions * sites];
+		double wakeFree = 0;
+		for (int thets = 0; thets < directions; thets++) {
+			wakeFree += energy(0, thets);
+			double cos = scenario.getCosMidThetas(thets);
+			double sin = scenario.getSinMidThetas(thets);
+			for (int site = 0; site < sites; site++) {
+				double s = siteX[site] * cos + siteY[site] * sin;
+				double t = -siteX[site] * sin + siteY[site] * cos;
+				siteA[thets * sites + site] = t + scenario.k * s;
+				siteB[thets * sites + site] = t - scenario.k * s;
+			}
+		}
+		Arrays.fill(receivedEnergy, wakeFree);
+
+		x = new double[16];
+		y = new double[16];
+		sums = new double[16 * directions];
+		energies = new double[16 * directions];
+		turbA = new double[16 * directions];
+		turbB = new double[16 * directions];
+	}
+
+	/**
+	 * Places turbines until the layout has n of them or no site is left, and returns the layout.
+	 */
+	public double[][] build(int n) {
+		while (count < n) {
+			int site = getBestSite();
+			if (site < 0) {
+				break;
+			}
+			place(site);
+		}
+		return getLayout();
+	}
+
+	/**
+	 * Returns the available site of highest gain, the first one in case of a tie, -1 if there is none.
+	 */
+	public int getBestSite() {
+		int best = -1;
+		for (int site = 0; site < sites; site++) {
+			if (available[site] && (best < 0 || gain(site) > gain(best))) {
+				best = site;
+			}
+		}
+		return best;
+	}
+
+	private double gain(int site) {
+		return receivedEnergy[site] - castLoss[site];
+	}
+
+	/**
+	 * Returns the available sites and their gains, as rows of [x, y, gain].
+	 */
+	public double[][] getHeatmap() {
+		int rows = 0;
+		for (int site = 0; site < sites; site++) {
+			if (available[site]) {
+				rows++;
+			}
+		}
+		double[][] heatmap = new double[rows][];
+		int row = 0;
+		for (int site = 0; site < sites; site++) {
+			if (available[site]) {
+				heatmap[row++] = new double[] { siteX[site], siteY[site], gain(site) };
+			}
+		}
+		return heatmap;
+	}
+
+	public int getSiteCount() {
+		return sites;
+	}
+
+	/**
+	 * Returns the turbines placed so far.
+	 */
+	public double[][] getLayout() {
+		double[][] layout = new double[count][];
+		for (int turb = 0; turb < count; turb++) {
+			layout[turb] = new double[] { x[turb], y[turb] };
+		}
+		return layout;
+	}
+
+	/**
+	 * Places a turbine on the available site and updates the gains of the other sites.
+	 */
+	public void place(int site) {
+		if (!available[site]) {
+			throw new IllegalArgumentException("Site " + site + " is not available");
+		}
+		if (count == x.length) {
+			x = Arrays.copyOf(x, 2 * count);
+			y = Arrays.copyOf(y, 2 * count);
+			sums = Arrays.copyOf(sums, 2 * count * directions);
+			energies = Arrays.copyOf(energies, 2 * count * directions);
+			turbA = Arrays.copyOf(turbA, 2 * count * directions);
+			turbB = Arrays.copyOf(turbB, 2 * count * directions);
+		}
+		int turb = count++;
+		double xt = siteX[site];
+		double yt = siteY[site];
+		x[turb] = xt;
+		y[turb] = yt;
+		for (int thets = 0; thets < directions; thets++) {
+			int cell = turb * directions + thets;
+			sums[cell] = received[site * directions + thets];
+			energies[cell] = energy(sums[cell], thets);
+			turbA[cell] = siteA[thets * sites + site];
+			turbB[cell] = siteB[thets * sites + site];
+		}
+
+		// the placed turbines the new one wakes, with their squared deficits and energies before and after
+		int changes = 0;
+		int[] changed = new int[2 * directions];
+		double[] before = new double[2 * directions];
+		double[] beforeEnergy = new double[2 * directions];
+		for (int oturb = 0; oturb < turb; oturb++) {
+			for (int thets = 0; thets < directions; thets++) {
+				double squaredDef = evaluator.calculateSquaredDeficit(x[oturb], y[oturb], xt, yt, thets);
+				if (squaredDef > 0) {
+					if (changes == changed.length) {
+						changed = Arrays.copyOf(changed, 2 * changes);
+						before = Arrays.copyOf(before, 2 * changes);
+						beforeEnergy = Arrays.copyOf(beforeEnergy, 2 * changes);
+					}
+					int cell = oturb * directions + thets;
+					changed[changes] = cell;
+					before[changes] = sums[cell];
+					beforeEnergy[changes] = energies[cell];
+					changes++;
+					sums[cell] += squaredDef;
+					energies[cell] = energy(sums[cell], thets);
+				}
+			}
+		}
+		evaluator.getForkJoinPool()
+				.invoke(new UpdateTask(turb, Arrays.copyOf(changed, changes), before, beforeEnergy, 0, sites));
+	}
+
+	/**
+	 * Fork/join task updating the gains of a range of sites after the placement of turbine turb.
+	 */
+	private class UpdateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int turb;
+		private final int[] changed;
+		private final double[] before;
+		private final double[] beforeEnergy;
+		private final int from;
+		private final int to;
+
+		UpdateTask(int turb, int[] changed, double[] before, double[] beforeEnergy, int from, int to) {
+			this.turb = turb;
+			this.changed = changed;
+			this.before = before;
+			this.beforeEnergy = beforeEnergy;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SITE_GRAIN) {
+				for (int site = from; site < to; site++) {
+					updateSite(site, turb, changed, before, beforeEnergy);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new UpdateTask(turb, changed, before, beforeEnergy, from, middle),
+					new UpdateTask(turb, changed, before, beforeEnergy, middle, to));
+		}
+	}
+
+	private void updateSite(int site, int turb, int[] changed, double[] before, double[] beforeEnergy) {
+		if (!available[site]) {
+			return;
+		}
+		double xs = siteX[site];
+		double ys = siteY[site];
+		double dx = xs - x[turb];
+		double dy = ys - y[turb];
+		if (dx * dx + dy * dy < scenario.minDist) {
+			available[site] = false;
+			return;
+		}
+
+		// the wake of the new turbine on the site, and the wake of the site on the new turbine
+		boolean receivedChanged = false;
+		for (int thets = 0; thets < directions; thets++) {
+			int cell = site * directions + thets;
+			double squaredDef = squaredDeficit(site, thets, turb, true);
+			if (squaredDef > 0) {
+				received[cell] += squaredDef;
+				receivedChanged = true;
+			}
+			squaredDef = squaredDeficit(site, thets, turb, false);
+			if (squaredDef > 0) {
+				int turbCell = turb * directions + thets;
+				castLoss[site] += energies[turbCell] - energy(sums[turbCell] + squaredDef, thets);
+			}
+		}
+		if (receivedChanged) {
+			double energy = 0;
+			for (int thets = 0; thets < directions; thets++) {
+				energy += energy(received[site * directions + thets], thets);
+			}
+			receivedEnergy[site] = energy;
+		}
+
+		// the loss the site would cause on the turbines whose deficits changed
+		for (int c = 0; c < changed.length; c++) {
+			int oturb = changed[c] / directions;
+			int thets = changed[c] % directions;
+			double squaredDef = squaredDeficit(site, thets, oturb, false);
+			if (squaredDef > 0) {
+				double oldLoss = beforeEnergy[c] - energy(before[c] + squaredDef, thets);
+				double newLoss = energies[changed[c]] - energy(sums[changed[c]] + squaredDef, thets);
+				castLoss[site] += newLoss - oldLoss;
+			}
+		}
+	}
+
+	/**
+	 * Returns the squared deficit caused by the placed turbine turb on the site when onSite, or by the site on
+	 * the turbine otherwise, after the cone test of WakeSweep in the frame of the direction.
+	 */
+	private double squaredDeficit(int site, int thets, int turb, boolean onSite) {
+		double xt = x[turb];
+		double yt = y[turb];
+		double a = turbA[turb * directions + thets];
+		double b = turbB[turb * directions + thets];
+		double sa = siteA[thets * sites + site];
+		double sb = siteB[thets * sites + site];
+		if (onSite) {
+			if (a >= sa + reach || b <= sb - reach) {
+				return 0;
+			}
+			return evaluator.calculateSquaredDeficit(siteX[site], siteY[site], xt, yt, thets);
+		}
+		if (sa >= a + reach || sb <= b - reach) {
+			return 0;
+		}
+		return evaluator.calculateSquaredDeficit(xt, yt, siteX[site], siteY[site], thets);
+	}
+
+	private double energy(double squaredDef, int thets) {
+		return evaluator.calculateDeficitEnergy(Math.sqrt(squaredDef), thets, false, true);
+	}
+
+}
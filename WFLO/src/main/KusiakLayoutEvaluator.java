@@ -1,27 +1,507 @@
 package main;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class KusiakLayoutEvaluator extends WindFarmLayoutEvaluator {
-	protected double tspe[][];
-	protected double tpositions[][];
-	protected double energyCapture;
-	protected double wakeFreeRatio;
-	protected double energyCost;
 
-	protected WindScenario scenario;
+	public static final String _EXACT = "exact"; // wblcdf computed with exp and pow
+	public static final String _WBLCDF_TABLE = "wblcdf"; // wblcdf interpolated in the scenario table
+	public static final String _RESPONSE_TABLE = "response"; // energy interpolated in the deficit response table
+
+	public static final String _SERIAL = "serial"; // one evaluation runs in the calling thread
+	public static final String _PARALLEL_TURBINES = "turbines"; // one evaluation is split by ranges of turbines
+	public static final String _PARALLEL_DIRECTIONS = "directions"; // one evaluation is split by ranges of directions
+
+	public static final String _DOUBLE = "double"; // deficits computed in double precision
+	public static final String _FLOAT = "float"; // deficits computed in single precision, for screening
+
+	// relative margin of the trig-free cone test, beyond which it gives the same answer as calculateBeta
+	private static final double CONE_MARGIN = 1e-9;
+
+	public static final int DEFAULT_TURBINE_GRAIN = 16;
+	public static final int DEFAULT_DIRECTION_GRAIN = 1;
+
+	protected WindScenario scenario; // the scenario evaluated, reduced by setFidelity
+	protected WindScenario fullScenario; // the scenario the evaluator was initialized with
+	protected String energyMode;
+	protected boolean wakeSweep; // find the waking turbines with WakeSweep instead of testing every pair
+	protected boolean trigFreeCone; // test the wake cone on the squared cosine instead of calling acos
+	protected double coneCos2Low; // squared cosine of the cone angle, lowered by the margin
+	protected double coneCos2High; // squared cosine of the cone angle, raised by the margin
+	protected ThreadLocal<EvaluationWorkspace> workspaces; // scratch buffers of each evaluating thread
+	protected String parallelMode;
+	protected int grainSize; // turbines or directions per fork/join task, 0 for the default of the mode
+	protected ForkJoinPool forkJoinPool;
+	protected String precision;
+	protected int[] directionOrder; // directions by decreasing omega, the order of the cut-off evaluation
+	protected boolean pairSymmetric; // without the sweep, compute each pair of turbines once
+	protected double farFieldRatio; // opening ratio of the far field approximation, 0 when it is off
+	protected int deficitTableResolution; // grid steps per rotor radius of the deficit table, 0 when it is off
+	protected DeficitTable deficitTable;
+	protected int[] oppositeDirections; // direction whose cosine and sine are the exact opposites, -1 if none
 
 	public static final double fac = Math.PI / 180;
 
 	public void initialize(WindScenario scenario) {
-		tspe = null;
-		tpositions = null;
-		energyCapture = 0;
-		wakeFreeRatio = 0;
 		this.scenario = scenario;
-		energyCost = Double.MAX_VALUE;
+		this.fullScenario = scenario;
+		this.directionOrder = sortDirections(scenario);
+		this.oppositeDirections = findOppositeDirections(scenario);
+		clearLastEvaluation();
+		energyMode = _EXACT;
+		wakeSweep = true;
+		trigFreeCone = true;
+		pairSymmetric = true;
+		farFieldRatio = 0;
+		deficitTableResolution = 0;
+		deficitTable = null;
+		initCone();
+		parallelMode = _SERIAL;
+		grainSize = 0;
+		forkJoinPool = ForkJoinPool.commonPool();
+		precision = _DOUBLE;
+		workspaces = new ThreadLocal<EvaluationWorkspace>() {
+			@Override
+			protected EvaluationWorkspace initialValue() {
+				return new EvaluationWorkspace(scenario.minDist);
+			}
+		};
+	}
+
+	public String getEnergyMode() {
+		return energyMode;
+	}
+
+	/**
+	 * Selects how the energy of a turbine is integrated over the wind speeds: _EXACT, _WBLCDF_TABLE or
+	 * _RESPONSE_TABLE.
+	 */
+	public void setEnergyMode(String energyMode) {
+		if (!energyMode.equals(_EXACT) && !energyMode.equals(_WBLCDF_TABLE) && !energyMode.equals(_RESPONSE_TABLE)) {
+			throw new IllegalArgumentException("Unknown energy mode: " + energyMode);
+		}
+		this.energyMode = energyMode;
+	}
+
+	public boolean isWakeSweep() {
+		return wakeSweep;
+	}
+
+	/**
+	 * Selects whether the waking turbines are found with the direction sweep of WakeSweep (the default) or by
+	 * testing every pair of turbines. Both give the same deficits.
+	 */
+	public void setWakeSweep(boolean wakeSweep) {
+		this.wakeSweep = wakeSweep;
+	}
+
+	public int getDeficitTableResolution() {
+		return deficitTableResolution;
 	}
 
+	/**
+	 * Replaces the cone test and the deficit of each pair of turbines by a lookup in a DeficitTable over the
+	 * offset of the pair in the frame of the direction, with resolution grid steps per rotor radius, when
+	 * resolution is positive. The interpolation blurs the edge of the wake cones, sample.DeficitTableBenchmark
+	 * reports the error. 0 (the default) restores the analytic kernel.
+	 */
+	public void setDeficitTable(int resolution) {
+		if (resolution < 0) {
+			throw new IllegalArgumentException("Negative resolution: " + resolution);
+		}
+		deficitTableResolution = resolution;
+		deficitTable = resolution > 0 ? new DeficitTable(scenario, resolution) : null;
+	}
+
+	public double getFarFieldRatio() {
+		return farFieldRatio;
+	}
+
+	/**
+	 * Replaces the wake sweep by the far field approximation of WakeQuadtree when openingRatio is positive:
+	 * the distant groups of turbines inside the wake cone of a turbine are aggregated as one source, which
+	 * makes the evaluation of layouts of thousands of turbines close to n log n per direction. The larger the
+	 * ratio, the more groups are aggregated and the larger the error; sample.FarFieldBenchmark reports it. 0
+	 * (the default) restores the exact evaluation. The far field only replaces the sweep, it has no effect
+	 * when the sweep is off.
+	 */
+	public void setFarField(double openingRatio) {
+		if (openingRatio < 0) {
+			throw new IllegalArgumentException("Negative opening ratio: " + openingRatio);
+		}
+		this.farFieldRatio = openingRatio;
+	}
+
+	public boolean isPairSymmetric() {
+		return pairSymmetric;
+	}
+
+	/**
+	 * Selects whether, without the wake sweep and in the serial mode, the deficits are computed pair by pair
+	 * (the default) or turbine by turbine. The pair kernel computes the offset of each pair of turbines once for
+	 * all the directions, and the projection once for both turbines of the pair; both give the same deficits.
+	 * It needs the trig-free cone and no deficit table, otherwise the deficits are computed turbine by turbine.
+	 */
+	public void setPairSymmetric(boolean pairSymmetric) {
+		this.pairSymmetric = pairSymmetric;
+	}
+
+	public boolean isTrigFreeCone() {
+		return trigFreeCone;
+	}
+
+	/**
+	 * Selects whether the wake cone is tested without trigonometry (the default) or with the acos of
+	 * calculateBeta. Both give the same deficits, see calculateSquaredDeficit.
+	 */
+	public void setTrigFreeCone(boolean trigFreeCone) {
+		this.trigFreeCone = trigFreeCone;
+	}
+
+	/**
+	 * Takes the energy mode, the wake options and the parallel settings of another evaluator, keeping its own
+	 * scenario and fidelity. The deficit table is only built again when its resolution changes.
+	 */
+	void copyOptions(KusiakLayoutEvaluator other) {
+		energyMode = other.energyMode;
+		wakeSweep = other.wakeSweep;
+		trigFreeCone = other.trigFreeCone;
+		pairSymmetric = other.pairSymmetric;
+		farFieldRatio = other.farFieldRatio;
+		if (deficitTableResolution != other.deficitTableResolution) {
+			setDeficitTable(other.deficitTableResolution);
+		}
+		parallelMode = other.parallelMode;
+		grainSize = other.grainSize;
+		forkJoinPool = other.forkJoinPool;
+		setExecutor(other.getExecutor());
+	}
+
+	/**
+	 * Sets the fidelity of the evaluation: the directions whose omega is below minOmega are dropped and every
+	 * speedStep wind speed bins are merged, see WindScenario.reduce. (0, 1) restores the full fidelity. The
+	 * outputs per direction only cover the kept directions.
+	 */
+	public void setFidelity(double minOmega, int speedStep) {
+		if (minOmega <= 0 && speedStep == 1) {
+			scenario = fullScenario;
+		} else {
+			scenario = fullScenario.reduce(minOmega, speedStep);
+		}
+		directionOrder = sortDirections(scenario);
+		oppositeDirections = findOppositeDirections(scenario);
+		initCone();
+		if (deficitTable != null) {
+			deficitTable = new DeficitTable(scenario, deficitTableResolution);
+		}
+		clearLastEvaluation();
+	}
+
+	public boolean isFullFidelity() {
+		return scenario == fullScenario;
+	}
+
+	/**
+	 * Returns the bound of the difference between the wake free ratio computed at the current fidelity and at
+	 * full fidelity, for any layout. It is 0 at full fidelity.
+	 */
+	public double getWakeFreeRatioErrorBound() {
+		return scenario.getWakeFreeRatioErrorBound();
+	}
+
+	/**
+	 * Returns the lowest cost of energy the layout of a result may have at full fidelity, given the error bound
+	 * of the current fidelity. Double.MAX_VALUE for a result that was not evaluated.
+	 */
+	public double getEnergyCostLowerBound(EvaluationResult result, int n) {
+		if (!result.isEvaluated()) {
+			return Double.MAX_VALUE;
+		}
+		return calculateEnergyCost(n, result.getWakeFreeRatio() + getWakeFreeRatioErrorBound());
+	}
+
+	public String getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Selects the precision of the wake deficits computed by the evaluations of this class: _DOUBLE (the
+	 * default) or _FLOAT. In single precision the deficits are swept direction by direction from float copies
+	 * of the coordinates, with the analytic kernel whatever the wake options (WakeSweep.computeDirectionFloat);
+	 * the energies are still integrated in double precision. On 500 turbines this halves the time of an
+	 * evaluation with the response tables and saves a quarter with the exact integration. The cost of energy
+	 * differs from the double one by about 1e-9 relatively on the shipped scenarios, and by up to 1e-4 when a
+	 * pair of turbines on the edge of a wake cone falls on the other side (sample.FloatPrecisionTest). This is
+	 * fine to screen layouts but not to report them.
+	 */
+	public void setPrecision(String precision) {
+		checkPrecision(precision);
+		this.precision = precision;
+	}
+
+	public String getParallelMode() {
+		return parallelMode;
+	}
+
+	/**
+	 * Selects how a single evaluation uses the cores: _SERIAL, _PARALLEL_TURBINES or _PARALLEL_DIRECTIONS. The
+	 * parallel modes split the evaluation into fork/join tasks on the pool of the evaluator; the energies are
+	 * always summed in the same order, so the results are the same whatever the mode and the number of threads.
+	 * The parallel modes only pay off when a few large layouts are evaluated at a time, evaluateBatch already
+	 * keeps the cores busy with a whole generation.
+	 */
+	public void setParallelMode(String parallelMode) {
+		if (!parallelMode.equals(_SERIAL) && !parallelMode.equals(_PARALLEL_TURBINES)
+				&& !parallelMode.equals(_PARALLEL_DIRECTIONS)) {
+			throw new IllegalArgumentException("Unknown parallel mode: " + parallelMode);
+		}
+		this.parallelMode = parallelMode;
+	}
+
+	public int getGrainSize() {
+		return grainSize;
+	}
+
+	/**
+	 * Sets the number of turbines (_PARALLEL_TURBINES) or directions (_PARALLEL_DIRECTIONS) computed by one
+	 * fork/join task. 0 selects DEFAULT_TURBINE_GRAIN or DEFAULT_DIRECTION_GRAIN.
+	 */
+	public void setGrainSize(int grainSize) {
+		if (grainSize < 0) {
+			throw new IllegalArgumentException("Negative grain size: " + grainSize);
+		}
+		this.grainSize = grainSize;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * Sets the pool running the tasks of the parallel modes, the common pool by default.
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Evaluates the layout and keeps its result for the getters. Concurrent callers should use evaluateResult
+	 * instead, the getters only describe the last layout evaluated by any thread. The outputs per turbine and
+	 * per direction are only computed if getEnergyOutputs or getTurbineFitnesses asks for them.
+	 */
 	@Override
 	public double evaluate(double[][] layout) {
+		return keepLastEvaluation(layout, evaluateResult(layout, false)).getEnergyCost();
+	}
+
+	@Override
+	public EvaluationResult evaluateResult(double[][] layout, boolean withOutputs) {
+		return evaluateResult(layout, withOutputs, precision);
+	}
+
+	/**
+	 * Evaluates the layout with the deficits computed in the given precision, _DOUBLE or _FLOAT, whatever the
+	 * precision of the evaluator.
+	 */
+	public EvaluationResult evaluateResult(double[][] layout, boolean withOutputs, String precision) {
+		checkPrecision(precision);
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(layout, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		return evaluateWorkspace(ws, withOutputs);
+	}
+
+	/**
+	 * Evaluates the layout unless it cannot beat cutoffCoE, see evaluateResult(double[][], double), and returns
+	 * its cost of energy, or a lower bound of it not smaller than cutoffCoE. It does not update the getters.
+	 */
+	public double evaluate(double[][] layout, double cutoffCoE) {
+		return evaluateResult(layout, cutoffCoE).getEnergyCost();
+	}
+
+	/**
+	 * Evaluates the layout direction by direction, by decreasing omega, and gives up as soon as it cannot beat
+	 * cutoffCoE: the directions not yet computed are assumed wake free, which bounds the energy output from
+	 * above and the cost of energy from below, and once that lower bound reaches cutoffCoE a CUT_OFF result
+	 * carrying the bounds is returned. A layout that beats the cut-off gets the same result as with
+	 * evaluateResult, without the outputs. The directions are computed in the calling thread, whatever the
+	 * parallel mode, and the cut-off evaluations are counted by EvaluationBudget.getPartialEvaluations.
+	 */
+	public EvaluationResult evaluateResult(double[][] layout, double cutoffCoE) {
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(layout, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		EvaluationBudget.recordEvaluation();
+		if (!checkConstraint(ws)) {
+			return EvaluationResult.INFEASIBLE;
+		}
+		return evaluateCutoff(ws, cutoffCoE);
+	}
+
+	/**
+	 * Same as evaluateResult(double[][], double) without checking the layout again.
+	 */
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, double cutoffCoE) {
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(layout, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		EvaluationBudget.recordEvaluation();
+		return evaluateCutoff(ws, cutoffCoE);
+	}
+
+	/**
+	 * Evaluates the valid layout loaded in the workspace direction by direction until it cannot beat cutoffCoE.
+	 */
+	private EvaluationResult evaluateCutoff(EvaluationWorkspace ws, double cutoffCoE) {
+		int directions = scenario.thetas.length;
+		prepareDeficits(ws);
+		boolean useTable = energyMode.equals(_WBLCDF_TABLE);
+		boolean useResponse = energyMode.equals(_RESPONSE_TABLE);
+		// remainingBounds[d] is the wake free energy of the directions from directionOrder[d] on
+		double[] remainingBounds = ws.remainingBounds;
+		remainingBounds[directions] = 0;
+		for (int d = directions - 1; d >= 0; d--) {
+			double wakeFree = ws.n * calculateDeficitEnergy(0, directionOrder[d], useTable, useResponse);
+			remainingBounds[d] = remainingBounds[d + 1] + wakeFree;
+		}
+
+		double computed = 0;
+		for (int d = 0; d < directions; d++) {
+			// the slack covers the rounding of the sums, which differ from the ones of the full evaluation
+			double energyBound = (computed + remainingBounds[d]) * (1 + 1e-12);
+			double wakeFreeRatioBound = energyBound / (scenario.wakeFreeEnergy * ws.n);
+			double energyCostBound = wakeFreeRatioBound <= 0 ? Double.MAX_VALUE
+					: calculateEnergyCost(ws.n, wakeFreeRatioBound);
+			if (energyCostBound >= cutoffCoE) {
+				EvaluationBudget.recordPartialEvaluation();
+				return new EvaluationResult(EvaluationResult.Status.CUT_OFF, energyCostBound, wakeFreeRatioBound,
+						energyBound, null, scenario.wakeFreeEnergy);
+			}
+			int thets = directionOrder[d];
+			calculateDirectionEnergies(ws, thets, thets + 1, ws.sweep);
+			for (int turb = 0; turb < ws.n; turb++) {
+				computed += ws.spe[thets][turb];
+			}
+		}
+		return evaluatedResult(ws, sumEnergies(ws), false);
+	}
+
+	/**
+	 * Returns the marginal contribution of every turbine of the layout to its energy output, the energy output
+	 * of the layout minus the one of the layout without that turbine: its own energy, minus the energy the
+	 * turbines it wakes would gain without its wakes. Returns null if the layout is invalid.
+	 *
+	 * It takes one pass instead of one evaluation per turbine. In each direction, the squared deficits of each
+	 * turbine are summed by increasing index of the waking turbine, as in calculateWakeTurbine, and the waking
+	 * pairs found by the cone test of WakeSweep are kept. Removing a turbine then only changes the energies of
+	 * the turbines it wakes, computed from their sum minus its squared deficit, as in EvaluationSession.remove,
+	 * or from a deficit of 0 when it is their only waking turbine. The deficits are always computed without the
+	 * far field approximation. It counts as one evaluation.
+	 */
+	public double[] calculateContributions(double[][] layout) {
+		EvaluationWorkspace ws = workspaces.get();
+		int directions = scenario.thetas.length;
+		ws.load(layout, directions);
+		EvaluationBudget.recordEvaluation();
+		if (!checkConstraint(ws)) {
+			return null;
+		}
+		boolean useTable = energyMode.equals(_WBLCDF_TABLE);
+		boolean useResponse = energyMode.equals(_RESPONSE_TABLE);
+		int n = ws.n;
+		double k = scenario.k;
+		double reach = WakeSweep.reach(scenario);
+		double[] contributions = new double[n];
+		double[] a = new double[n]; // cone coordinates of WakeSweep
+		double[] b = new double[n];
+		int[] wakers = new int[n]; // number of turbines waking each turbine
+		double[] energies = new double[n];
+		// the waking pairs of the current direction
+		int[] pairWaked = new int[n];
+		int[] pairWaking = new int[n];
+		double[] pairDeficits = new double[n];
+
+		for (int thets = 0; thets < directions; thets++) {
+			double cos = scenario.getCosMidThetas(thets);
+			double sin = scenario.getSinMidThetas(thets);
+			for (int turb = 0; turb < n; turb++) {
+				double s = ws.x[turb] * cos + ws.y[turb] * sin;
+				double t = -ws.x[turb] * sin + ws.y[turb] * cos;
+				a[turb] = t + k * s;
+				b[turb] = t - k * s;
+			}
+			double[] sums = ws.spe[thets];
+			int pairs = 0;
+			for (int turb = 0; turb < n; turb++) {
+				double xt = ws.x[turb];
+				double yt = ws.y[turb];
+				double velDef = 0;
+				int count = 0;
+				for (int oturb = 0; oturb < n; oturb++) {
+					if (oturb == turb || a[oturb] >= a[turb] + reach || b[oturb] <= b[turb] - reach) {
+						continue;
+					}
+					double squaredDef = calculateSquaredDeficit(xt, yt, ws.x[oturb], ws.y[oturb], thets);
+					if (squaredDef > 0) {
+						velDef += squaredDef;
+						count++;
+						if (pairs == pairWaked.length) {
+							pairWaked = Arrays.copyOf(pairWaked, 2 * pairs);
+							pairWaking = Arrays.copyOf(pairWaking, 2 * pairs);
+							pairDeficits = Arrays.copyOf(pairDeficits, 2 * pairs);
+						}
+						pairWaked[pairs] = turb;
+						pairWaking[pairs] = oturb;
+						pairDeficits[pairs] = squaredDef;
+						pairs++;
+					}
+				}
+				sums[turb] = velDef;
+				wakers[turb] = count;
+				energies[turb] = calculateDeficitEnergy(Math.sqrt(velDef), thets, useTable, useResponse);
+				contributions[turb] += energies[turb];
+			}
+			for (int p = 0; p < pairs; p++) {
+				int turb = pairWaked[p];
+				double velDef = wakers[turb] == 1 ? 0 : Math.max(0, sums[turb] - pairDeficits[p]);
+				double gain = calculateDeficitEnergy(Math.sqrt(velDef), thets, useTable, useResponse) - energies[turb];
+				contributions[pairWaking[p]] -= gain;
+			}
+		}
+		return contributions;
+	}
+
+	/**
+	 * Evaluates a layout given as flat coordinate arrays and returns its cost of energy. The coordinates are
+	 * copied into the buffers of the calling thread, and the scratch arrays are reused between calls, so once
+	 * the buffers have grown to the layout size this path does not allocate. It does not update the getters.
+	 * 
+	 * @param xs
+	 *            x coordinates of the turbines
+	 * @param ys
+	 *            y coordinates of the turbines
+	 * @param n
+	 *            number of turbines to read from xs and ys
+	 * @return the cost of energy, max_double if the layout is invalid
+	 */
+	public double evaluate(double[] xs, double[] ys, int n) {
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(xs, ys, n, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		EvaluationBudget.recordEvaluation();
+		if (!checkConstraint(ws)) {
+			return Double.MAX_VALUE;
+		}
+		double wfr = calculateEnergy(ws) / (scenario.wakeFreeEnergy * n);
+		if (wfr <= 0)
+			return Double.MAX_VALUE;
+		return calculateEnergyCost(n, wfr);
+	}
+
+	protected double calculateEnergyCost(int n, double wfr) {
 		final double ct = 750000;
 		final double cs = 8000000;
 		final double m = 30;
@@ -29,141 +509,625 @@ public class KusiakLayoutEvaluator extends WindFarmLayoutEvaluator {
 		final double y = 20;
 		final double com = 20000;
 
-		double wfr = evaluate_2014(layout);
-		if (wfr <= 0)
-			return Double.MAX_VALUE;
-		int n = layout.length;
-
-		energyCost = (((ct * n + cs * Math.floor(n / m)) * (0.666667 + 0.333333 * Math.exp(-0.00174 * n * n)) + com * n)
+		return (((ct * n + cs * Math.floor(n / m)) * (0.666667 + 0.333333 * Math.exp(-0.00174 * n * n)) + com * n)
 				/ ((1 - Math.pow(1 + r, -y)) / r) / (8760.0 * scenario.wakeFreeEnergy * wfr * n)) + 0.1 / n;
+	}
 
-		// System.out.println(n+"\t"+wfr+"\t"+fit);
+	/**
+	 * Evaluates the layout, keeps its result for the getters and returns its wake free ratio, 0 if the layout
+	 * is invalid.
+	 */
+	public double evaluate_2014(double[][] layout) {
+		return keepLastEvaluation(layout, evaluateResult(layout, false)).getWakeFreeRatio();
+	}
 
-		return energyCost;
+	/**
+	 * Evaluates the layout without checking it again, which checkConstraint must already have accepted.
+	 */
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, boolean withOutputs) {
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(layout, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		EvaluationBudget.recordEvaluation();
+		return evaluatedResult(ws, calculateEnergy(ws), withOutputs);
 	}
 
-	public double evaluate_2014(double[][] layout) {
-		WindFarmLayoutEvaluator.nEvals++;
-		// Copying the layout
-		tpositions = new double[layout.length][layout[0].length];
-		for (int i = 0; i < layout.length; i++) {
-			for (int j = 0; j < layout[i].length; j++) {
-				tpositions[i][j] = layout[i][j];
-			}
-		}
-
-		energyCapture = 0;
-		if (checkConstraint(tpositions)) {
-			tspe = new double[scenario.thetas.length][tpositions.length];
-			// wind resource per turbine => stored temporaly in tspe
-			for (int turb = 0; turb < tpositions.length; turb++) {
-				// for each turbine
-				for (int thets = 0; thets < scenario.thetas.length; thets++) {
-					// for each direction
-					// calculate the wake
-					double totalVdef = calculateWakeTurbine(turb, thets);
-					double cTurb = scenario.c[thets] * (1.0 - totalVdef);
-					// annual power output per turbine and per direction
-					double tint = scenario.thetas[thets][1] - scenario.thetas[thets][0];
-					double w = scenario.omegas[thets];
-					double ki = scenario.ks[thets];
-					double totalPow = 0;
-					for (int ghh = 1; ghh < scenario.vints.length; ghh++) {
-						double v = (scenario.vints[ghh] + scenario.vints[ghh - 1]) / 2.0;
-						double P = powOutput(v);
-						double prV = WindScenario.wblcdf(scenario.vints[ghh], cTurb, ki)
-								- WindScenario.wblcdf(scenario.vints[ghh - 1], cTurb, ki);
-						totalPow += prV * P;
-					}
-					totalPow += scenario.PRated * (1.0 - WindScenario.wblcdf(scenario.vRated, cTurb, ki));
-					totalPow *= tint * w;
-					tspe[thets][turb] = totalPow;
-					energyCapture += totalPow;
-				}
+	/**
+	 * Evaluates the layout loaded in the workspace.
+	 */
+	protected EvaluationResult evaluateWorkspace(EvaluationWorkspace ws, boolean withOutputs) {
+		EvaluationBudget.recordEvaluation();
+		if (!checkConstraint(ws)) {
+			return EvaluationResult.INFEASIBLE;
+		}
+		return evaluatedResult(ws, calculateEnergy(ws), withOutputs);
+	}
+
+	/**
+	 * Returns the result of the valid layout of the workspace, whose energies have been computed.
+	 */
+	private EvaluationResult evaluatedResult(EvaluationWorkspace ws, double energyCapture, boolean withOutputs) {
+		double wakeFreeRatio = energyCapture / (scenario.wakeFreeEnergy * ws.n);
+		double energyCost = wakeFreeRatio <= 0 ? Double.MAX_VALUE : calculateEnergyCost(ws.n, wakeFreeRatio);
+		double[][] outputs = null;
+		if (withOutputs) {
+			outputs = new double[ws.spe.length][];
+			for (int thets = 0; thets < ws.spe.length; thets++) {
+				outputs[thets] = ws.spe[thets].clone();
 			}
-			wakeFreeRatio = energyCapture / (scenario.wakeFreeEnergy * tpositions.length);
-			return wakeFreeRatio;
+		}
+		return new EvaluationResult(EvaluationResult.Status.EVALUATED, energyCost, wakeFreeRatio, energyCapture, outputs,
+				scenario.wakeFreeEnergy);
+	}
+
+	/**
+	 * Computes the energy of the valid layout loaded in the workspace, per direction and per turbine in ws.spe,
+	 * and returns the global energy output. The energies are summed once they are all computed, turbine by
+	 * turbine and direction by direction, so the parallel modes give the same result as the serial one.
+	 */
+	protected double calculateEnergy(EvaluationWorkspace ws) {
+		int directions = scenario.thetas.length;
+		if (parallelMode.equals(_PARALLEL_DIRECTIONS)) {
+			prepareDeficits(ws);
+			int grain = grainSize > 0 ? grainSize : DEFAULT_DIRECTION_GRAIN;
+			forkJoinPool.invoke(new EnergyTask(ws, true, 0, directions, grain));
+		} else if (parallelMode.equals(_PARALLEL_TURBINES)) {
+			prepareDeficits(ws);
+			if (sweeps(ws)) {
+				// a sweep covers every turbine of a direction, so the deficits are swept direction by direction
+				forkJoinPool.invoke(new SweepTask(ws, 0, directions));
+			}
+			int grain = grainSize > 0 ? grainSize : DEFAULT_TURBINE_GRAIN;
+			forkJoinPool.invoke(new EnergyTask(ws, false, 0, ws.n, grain));
 		} else {
-			energyCapture = 0;
-			wakeFreeRatio = 0;
-			tspe = null;
-			return 0;
+			calculateDeficits(ws);
+			calculateTurbineEnergies(ws, 0, ws.n, true);
 		}
+		return sumEnergies(ws);
 	}
 
-	@Override
-	public double[][] getEnergyOutputs() {
-		return tspe;
+	/**
+	 * Computes the deficits of the valid layout loaded in the workspace, per direction and per turbine in ws.spe,
+	 * in the calling thread and with the wake options of the evaluator.
+	 */
+	void calculateDeficits(EvaluationWorkspace ws) {
+		prepareDeficits(ws);
+		double[][] tspe = ws.spe;
+		int directions = scenario.thetas.length;
+		if (sweeps(ws)) {
+			for (int thets = 0; thets < directions; thets++) {
+				sweepDirection(ws, ws.sweep, thets, tspe[thets]);
+			}
+		} else if (pairSymmetric && trigFreeCone && deficitTable == null) {
+			calculatePairDeficits(ws);
+		} else {
+			for (int thets = 0; thets < directions; thets++) {
+				for (int turb = 0; turb < ws.n; turb++) {
+					tspe[thets][turb] = calculateWakeTurbine(ws.x, ws.y, ws.n, turb, thets);
+				}
+			}
+		}
 	}
 
-	@Override
-	public double[] getTurbineFitnesses() {
-		double res[] = new double[tspe[0].length];
-		for (int i = 0; i < res.length; i++) {
-			res[i] = 0;
-			for (int j = 0; j < tspe.length; j++) {
-				res[i] += tspe[j][i];
+	/**
+	 * Sums the energies of ws.spe turbine by turbine and direction by direction.
+	 */
+	private double sumEnergies(EvaluationWorkspace ws) {
+		double[][] tspe = ws.spe;
+		int directions = tspe.length;
+		double energyCapture = 0;
+		for (int turb = 0; turb < ws.n; turb++) {
+			for (int thets = 0; thets < directions; thets++) {
+				energyCapture += tspe[thets][turb];
 			}
-			res[i] = res[i] / scenario.wakeFreeEnergy;
 		}
-		return res;
+		return energyCapture;
+	}
+
+	/**
+	 * Computes the energy of the turbines from (inclusive) to to (exclusive) in every direction. With the wake
+	 * sweep the deficits must already be in ws.spe.
+	 */
+	protected void calculateTurbineEnergies(EvaluationWorkspace ws, int from, int to) {
+		calculateTurbineEnergies(ws, from, to, sweeps(ws));
+	}
+
+	private void calculateTurbineEnergies(EvaluationWorkspace ws, int from, int to, boolean deficitsComputed) {
+		double[][] tspe = ws.spe;
+		boolean useTable = energyMode.equals(_WBLCDF_TABLE);
+		boolean useResponse = energyMode.equals(_RESPONSE_TABLE);
+		for (int turb = from; turb < to; turb++) {
+			// for each turbine
+			for (int thets = 0; thets < scenario.thetas.length; thets++) {
+				// for each direction
+				// calculate the wake
+				double totalVdef = deficitsComputed ? tspe[thets][turb]
+						: calculateWakeTurbine(ws.x, ws.y, ws.n, turb, thets);
+				tspe[thets][turb] = calculateDeficitEnergy(totalVdef, thets, useTable, useResponse);
+			}
+		}
+	}
+
+	/**
+	 * Computes the energy of every turbine in the directions from (inclusive) to to (exclusive), finding the
+	 * deficits with the given sweep buffers.
+	 */
+	protected void calculateDirectionEnergies(EvaluationWorkspace ws, int from, int to, WakeSweep sweep) {
+		boolean useTable = energyMode.equals(_WBLCDF_TABLE);
+		boolean useResponse = energyMode.equals(_RESPONSE_TABLE);
+		for (int thets = from; thets < to; thets++) {
+			double[] row = ws.spe[thets];
+			if (sweeps(ws)) {
+				sweepDirection(ws, sweep, thets, row);
+			} else {
+				for (int turb = 0; turb < ws.n; turb++) {
+					row[turb] = calculateWakeTurbine(ws.x, ws.y, ws.n, turb, thets);
+				}
+			}
+			for (int turb = 0; turb < ws.n; turb++) {
+				row[turb] = calculateDeficitEnergy(row[turb], thets, useTable, useResponse);
+			}
+		}
+	}
+
+	/**
+	 * Annual energy output of one turbine in one direction, given its velocity deficit.
+	 */
+	protected double calculateDeficitEnergy(double totalVdef, int thets, boolean useTable, boolean useResponse) {
+		if (useResponse) {
+			return scenario.getDirectionEnergyInterpolated(totalVdef, thets);
+		}
+		double cTurb = scenario.c[thets] * (1.0 - totalVdef);
+		// annual power output per turbine and per direction
+		if (useTable) {
+			return calculateDirectionEnergyTable(cTurb, thets);
+		}
+		return calculateDirectionEnergy(cTurb, thets);
+	}
+
+	/**
+	 * Fork/join task computing the energies of a range of turbines or directions. The tasks split their range
+	 * in halves down to the grain size, every leaf writes its own cells of ws.spe.
+	 */
+	private class EnergyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final EvaluationWorkspace ws;
+		private final boolean byDirection;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		EnergyTask(EvaluationWorkspace ws, boolean byDirection, int from, int to, int grain) {
+			this.ws = ws;
+			this.byDirection = byDirection;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				if (byDirection) {
+					// the sweep buffers of the thread running the leaf, a leaf never waits for other tasks
+					calculateDirectionEnergies(ws, from, to, workspaces.get().sweep);
+				} else {
+					calculateTurbineEnergies(ws, from, to);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new EnergyTask(ws, byDirection, from, middle, grain),
+					new EnergyTask(ws, byDirection, middle, to, grain));
+		}
+	}
+
+	/**
+	 * Fork/join task sweeping the deficits of a range of directions into ws.spe, one direction per leaf.
+	 */
+	private class SweepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final EvaluationWorkspace ws;
+		private final int from;
+		private final int to;
+
+		SweepTask(EvaluationWorkspace ws, int from, int to) {
+			this.ws = ws;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				sweepDirection(ws, workspaces.get().sweep, from, ws.spe[from]);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SweepTask(ws, from, middle), new SweepTask(ws, middle, to));
+		}
+	}
+
+	/**
+	 * Annual energy output of one turbine in one direction, given the Weibull scale factor it sees.
+	 */
+	protected double calculateDirectionEnergy(double cTurb, int thets) {
+		return scenario.getDirectionEnergy(cTurb, thets);
+	}
+
+	/**
+	 * Same as calculateDirectionEnergy, with wblcdf interpolated in the scenario table. Scale factors outside
+	 * the table are computed exactly.
+	 */
+	protected double calculateDirectionEnergyTable(double cTurb, int thets) {
+		if (!scenario.isInWblcdfTable(cTurb)) {
+			return calculateDirectionEnergy(cTurb, thets);
+		}
+		double tint = scenario.getSectorWidth(thets);
+		double w = scenario.omegas[thets];
+		double totalPow = 0;
+		double previous = scenario.getWblcdfVintsInterpolated(cTurb, 0, thets);
+		for (int ghh = 1; ghh < scenario.vints.length; ghh++) {
+			double current = scenario.getWblcdfVintsInterpolated(cTurb, ghh, thets);
+			totalPow += (current - previous) * scenario.vintPowers[ghh];
+			previous = current;
+		}
+		totalPow += scenario.PRated * (1.0 - scenario.getWblcdfVratedInterpolated(cTurb, thets));
+		totalPow *= tint * w;
+		return totalPow;
+	}
+
+	/**
+	 * Returns the maximum relative error of calculateDirectionEnergyTable against calculateDirectionEnergy,
+	 * probed halfway between the tabulated scale factors of every direction, where the linear interpolation
+	 * is the least accurate. Scale factors at which a turbine produces less than 0.1% of its wake free energy
+	 * are skipped, as their relative error is meaningless.
+	 */
+	public double getWblcdfTableError() {
+		double maxError = 0;
+		double accuracy = scenario.getWblcdfAccuracy();
+		for (int thets = 0; thets < scenario.thetas.length; thets++) {
+			if (scenario.omegas[thets] <= 0) {
+				continue;
+			}
+			double wakeFree = calculateDirectionEnergy(scenario.c[thets], thets);
+			for (double cTurb = accuracy / 2.0; cTurb < scenario.c[thets]; cTurb += accuracy) {
+				double exact = calculateDirectionEnergy(cTurb, thets);
+				if (exact < 1e-3 * wakeFree) {
+					continue;
+				}
+				double error = Math.abs(calculateDirectionEnergyTable(cTurb, thets) - exact) / exact;
+				maxError = Math.max(maxError, error);
+			}
+		}
+		return maxError;
+	}
+
+	/**
+	 * Returns the maximum relative error of the per direction response tables of the scenario against
+	 * calculateDirectionEnergy, probed halfway between the tabulated deficits. Deficits at which a turbine
+	 * produces less than 0.1% of its wake free energy are skipped.
+	 */
+	public double getResponseTableError() {
+		double maxError = 0;
+		double step = scenario.getDeficitStep();
+		for (int thets = 0; thets < scenario.thetas.length; thets++) {
+			if (scenario.omegas[thets] <= 0) {
+				continue;
+			}
+			double wakeFree = calculateDirectionEnergy(scenario.c[thets], thets);
+			for (double vdef = step / 2.0; vdef < 1.0; vdef += step) {
+				double exact = calculateDirectionEnergy(scenario.c[thets] * (1.0 - vdef), thets);
+				if (exact < 1e-3 * wakeFree) {
+					continue;
+				}
+				double error = Math.abs(scenario.getDirectionEnergyInterpolated(vdef, thets) - exact) / exact;
+				maxError = Math.max(maxError, error);
+			}
+		}
+		return maxError;
+	}
+
+	/**
+	 * Evaluates the valid layout again with its outputs, in the precision of the evaluator, for the getters.
+	 */
+	@Override
+	protected EvaluationResult calculateOutputs(double[][] layout) {
+		EvaluationWorkspace ws = workspaces.get();
+		ws.load(layout, scenario.thetas.length);
+		loadPrecision(ws, precision);
+		return evaluatedResult(ws, calculateEnergy(ws), true);
 	}
 
 	public boolean checkConstraint(double layout[][]) {
 		for (int i = 0; i < layout.length; i++) {
-			if (layout[i][0] != layout[i][0] || layout[i][1] != layout[i][1] || layout[i][0] < 0.0 || layout[i][1] < 0.0
-					|| layout[i][0] > getFarmWidth() || layout[i][1] > getFarmHeight()) {
-				// System.out.println("Turbine "+i+"("+layout[i][0]+", "+layout[i][1]+") is invalid.");
+			if (!checkPosition(layout[i][0], layout[i][1])) {
+				return false;
+			}
+		}
+		// checking the security constraints
+		SpacingGrid spacingGrid = workspaces.get().spacingGrid;
+		spacingGrid.load(layout, getFarmWidth(), getFarmHeight());
+		return spacingGrid.isSpaced();
+	}
+
+	/**
+	 * Same checks as checkConstraint(double[][]) on a layout given as flat coordinate arrays.
+	 */
+	public boolean checkConstraint(double[] xs, double[] ys, int n) {
+		for (int i = 0; i < n; i++) {
+			if (!checkPosition(xs[i], ys[i])) {
 				return false;
 			}
+		}
+		// checking the security constraints
+		SpacingGrid spacingGrid = workspaces.get().spacingGrid;
+		spacingGrid.load(xs, ys, n, getFarmWidth(), getFarmHeight());
+		return spacingGrid.isSpaced();
+	}
 
-			// checking obstacle constraints
-			for (int j = 0; j < scenario.obstacles.length; j++) {
-				if (layout[i][0] > scenario.obstacles[j][0] && layout[i][0] < scenario.obstacles[j][2]
-						&& layout[i][1] > scenario.obstacles[j][1] && layout[i][1] < scenario.obstacles[j][3]) {
-					// System.out.println("Turbine "+i+"("+layout[i][0]+", "+layout[i][1]+") is in the obstacle "+j+"
-					// ["+scenario.obstacles[j][0]+", "+scenario.obstacles[j][1]+", "+scenario.obstacles[j][2]+",
-					// "+scenario.obstacles[j][3]+"].");
-					return false;
-				}
+	protected boolean checkConstraint(EvaluationWorkspace ws) {
+		for (int i = 0; i < ws.n; i++) {
+			if (!checkPosition(ws.x[i], ws.y[i])) {
+				return false;
 			}
-			// checking the security constraints
-			for (int j = 0; j < layout.length; j++) {
-				if (i != j) {
-					// calculate the sqared distance between both turb
-					double dist = (layout[i][0] - layout[j][0]) * (layout[i][0] - layout[j][0])
-							+ (layout[i][1] - layout[j][1]) * (layout[i][1] - layout[j][1]);
-					if (dist < scenario.minDist) {
-						// System.out.println("Security distance contraint violated between turbines "+i+"
-						// ("+layout[i][0]+", "+layout[i][1]+") and "+j+" ("+layout[j][0]+", "+layout[j][1]+"):
-						// "+Math.sqrt(dist)+" < "+Math.sqrt(scenario.minDist));
-						return false;
-					}
-				}
+		}
+		// checking the security constraints
+		ws.spacingGrid.load(ws.x, ws.y, ws.n, getFarmWidth(), getFarmHeight());
+		return ws.spacingGrid.isSpaced();
+	}
+
+	/**
+	 * Checks that a turbine is inside the farm and outside of every obstacle.
+	 */
+	protected boolean checkPosition(double x, double y) {
+		if (x != x || y != y || x < 0.0 || y < 0.0 || x > getFarmWidth() || y > getFarmHeight()) {
+			// System.out.println("Turbine ("+x+", "+y+") is invalid.");
+			return false;
+		}
+
+		// checking obstacle constraints
+		for (int j = 0; j < scenario.obstacles.length; j++) {
+			if (x > scenario.obstacles[j][0] && x < scenario.obstacles[j][2] && y > scenario.obstacles[j][1]
+					&& y < scenario.obstacles[j][3]) {
+				// System.out.println("Turbine ("+x+", "+y+") is in the obstacle "+j+".");
+				return false;
 			}
 		}
 		return true;
 	}
 
-	protected double calculateWakeTurbine(int turb, int thetIndex) {
-		double x = tpositions[turb][0];
-		double y = tpositions[turb][1];
+	/**
+	 * Returns the directions of the scenario by decreasing omega.
+	 */
+	private static int[] sortDirections(WindScenario scenario) {
+		int directions = scenario.thetas.length;
+		double[] keys = new double[directions];
+		int[] order = new int[directions];
+		for (int thets = 0; thets < directions; thets++) {
+			keys[thets] = -scenario.omegas[thets];
+			order[thets] = thets;
+		}
+		WakeSweep.sort(keys, order, directions);
+		return order;
+	}
+
+	/**
+	 * Prepares the buffers the deficits of the layout loaded in the workspace are computed from.
+	 */
+	private void prepareDeficits(EvaluationWorkspace ws) {
+		if (farFieldRatio > 0 && wakeSweep && !ws.singlePrecision) {
+			ws.quadtree.build(scenario, ws.x, ws.y, ws.n);
+		}
+	}
+
+	/**
+	 * Computes the deficits of every turbine of the workspace in the direction thets into row.
+	 */
+	private void sweepDirection(EvaluationWorkspace ws, WakeSweep sweep, int thets, double[] row) {
+		if (ws.singlePrecision) {
+			sweep.computeDirectionFloat(this, ws.fx, ws.fy, ws.n, thets, row);
+		} else if (farFieldRatio > 0) {
+			ws.quadtree.computeDirection(this, ws.x, ws.y, ws.n, thets, farFieldRatio, row, sweep.treeStack);
+		} else {
+			sweep.computeDirection(this, ws.x, ws.y, ws.n, thets, row);
+		}
+	}
+
+	/**
+	 * Returns whether the deficits of the layout loaded in the workspace are computed direction by direction by
+	 * sweepDirection: with the wake sweep, and always in single precision.
+	 */
+	private boolean sweeps(EvaluationWorkspace ws) {
+		return wakeSweep || ws.singlePrecision;
+	}
+
+	/**
+	 * Computes the deficits of the layout loaded in the workspace in the given precision.
+	 */
+	private void loadPrecision(EvaluationWorkspace ws, String precision) {
+		if (precision.equals(_FLOAT)) {
+			ws.loadFloats();
+		}
+	}
+
+	private static void checkPrecision(String precision) {
+		if (!precision.equals(_DOUBLE) && !precision.equals(_FLOAT)) {
+			throw new IllegalArgumentException("Unknown precision: " + precision);
+		}
+	}
+
+	protected double calculateWakeTurbine(double[] tx, double[] ty, int tn, int turb, int thetIndex) {
+		double x = tx[turb];
+		double y = ty[turb];
 		double velDef = 0;
-		for (int oturb = 0; oturb < tpositions.length; oturb++) {
+		for (int oturb = 0; oturb < tn; oturb++) {
 			if (oturb != turb) {
-				double xo = tpositions[oturb][0];
-				double yo = tpositions[oturb][1];
-				double beta = calculateBeta(x, y, xo, yo, thetIndex);
-				if (beta < scenario.atan_k) {
-					double dij = calculateProjectedDistance(x, y, xo, yo, thetIndex);
-					double curDef = calculateVelocityDeficit(dij);
-					velDef += curDef * curDef;
-				}
+				velDef += calculateSquaredDeficit(x, y, tx[oturb], ty[oturb], thetIndex);
 			}
 		}
 		return Math.sqrt(velDef);
 	}
 
+	/**
+	 * Returns the squared velocity deficit caused by turbine j on turbine i in the direction thetIndex, 0 if i
+	 * is not in the wake of j.
+	 * 
+	 * With the trig-free cone, the cosine of beta is compared with the cosine of atan_k without computing
+	 * beta: num^2 is compared with cos(atan_k)^2 (a^2 + b^2), where num, a and b are the terms of
+	 * calculateBeta. Only when the comparison falls within CONE_MARGIN of the edge of the cone, or when the
+	 * cosine is close to 1 where the acos of a rounded cosine above 1 is NaN, is calculateBeta called, so the
+	 * answer is always the one of calculateBeta.
+	 */
+	double calculateSquaredDeficit(double xi, double yi, double xj, double yj, int thetIndex) {
+		DeficitTable table = deficitTable;
+		if (table != null) {
+			double cos = scenario.getCosMidThetas(thetIndex);
+			double sin = scenario.getSinMidThetas(thetIndex);
+			double dx = xi - xj;
+			double dy = yi - yj;
+			return table.lookup(dx * cos + dy * sin, -dx * sin + dy * cos);
+		}
+		if (!trigFreeCone) {
+			double beta = calculateBeta(xi, yi, xj, yj, thetIndex);
+			if (beta < scenario.atan_k) {
+				double curDef = calculateVelocityDeficit(calculateProjectedDistance(xi, yi, xj, yj, thetIndex));
+				return curDef * curDef;
+			}
+			return 0;
+		}
+		double cos = scenario.getCosMidThetas(thetIndex);
+		double sin = scenario.getSinMidThetas(thetIndex);
+		double dx = xi - xj;
+		double dy = yi - yj;
+		double projected = dx * cos + dy * sin;
+		if (!isInCone(dx, dy, projected, cos, sin)) {
+			return 0;
+		}
+		double curDef = calculateVelocityDeficit(Math.abs(projected));
+		return curDef * curDef;
+	}
+
+	/**
+	 * The trig-free cone test of calculateSquaredDeficit, for the offset (dx, dy) of turbine i from turbine j
+	 * whose projection on the direction (cos, sin) is projected.
+	 */
+	private boolean isInCone(double dx, double dy, double projected, double cos, double sin) {
+		double num = projected + scenario.rkRatio;
+		if (num <= 0) {
+			return false; // beta is at least 90 degrees
+		}
+		double a = dx + scenario.rkRatio * cos;
+		double b = dy + scenario.rkRatio * sin;
+		double denom2 = a * a + b * b;
+		double num2 = num * num;
+		if (num2 < coneCos2Low * denom2) {
+			return false;
+		}
+		if (num2 <= coneCos2High * denom2 || num2 >= (1 - CONE_MARGIN) * denom2) {
+			return Math.acos(num / Math.sqrt(denom2)) < scenario.atan_k;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the deficits of every turbine in every direction into ws.spe, pair by pair. The offset of a pair
+	 * is computed once for all the directions. In a direction, the projection of j on i is the exact opposite of
+	 * the projection of i on j, so both cone tests and the deficit, which only depends on the absolute
+	 * projection, share it. When the cosine and sine of another direction are the exact opposites, j is in the
+	 * wake of i in that direction exactly when i is in the wake of j in this one, so both directions share the
+	 * tests too. The squared deficits of a turbine are summed by increasing index of the waking turbine, as in
+	 * calculateWakeTurbine, so the deficits are the same.
+	 */
+	private void calculatePairDeficits(EvaluationWorkspace ws) {
+		double[][] tspe = ws.spe;
+		int directions = tspe.length;
+		for (int thets = 0; thets < directions; thets++) {
+			Arrays.fill(tspe[thets], 0, ws.n, 0);
+		}
+		for (int i = 0; i < ws.n; i++) {
+			double xi = ws.x[i];
+			double yi = ws.y[i];
+			for (int j = i + 1; j < ws.n; j++) {
+				double dx = xi - ws.x[j];
+				double dy = yi - ws.y[j];
+				for (int thets = 0; thets < directions; thets++) {
+					int opposite = oppositeDirections[thets];
+					if (opposite >= 0 && opposite < thets) {
+						continue; // computed with its opposite direction
+					}
+					double cos = scenario.getCosMidThetas(thets);
+					double sin = scenario.getSinMidThetas(thets);
+					double projected = dx * cos + dy * sin;
+					boolean iWaked = isInCone(dx, dy, projected, cos, sin);
+					boolean jWaked = isInCone(-dx, -dy, -projected, cos, sin);
+					if (!iWaked && !jWaked) {
+						continue;
+					}
+					double curDef = calculateVelocityDeficit(Math.abs(projected));
+					double squaredDef = curDef * curDef;
+					if (iWaked) {
+						tspe[thets][i] += squaredDef;
+					}
+					if (jWaked) {
+						tspe[thets][j] += squaredDef;
+					}
+					if (opposite >= 0) {
+						if (jWaked) {
+							tspe[opposite][i] += squaredDef;
+						}
+						if (iWaked) {
+							tspe[opposite][j] += squaredDef;
+						}
+					}
+				}
+			}
+		}
+		for (int thets = 0; thets < directions; thets++) {
+			for (int turb = 0; turb < ws.n; turb++) {
+				tspe[thets][turb] = Math.sqrt(tspe[thets][turb]);
+			}
+		}
+	}
+
+	/**
+	 * Returns, for each direction of the scenario, the direction whose cosine and sine are exactly the
+	 * opposite ones, or -1.
+	 */
+	private static int[] findOppositeDirections(WindScenario scenario) {
+		int directions = scenario.thetas.length;
+		int[] opposites = new int[directions];
+		for (int thets = 0; thets < directions; thets++) {
+			opposites[thets] = -1;
+			for (int other = 0; other < directions; other++) {
+				if (other != thets && scenario.getCosMidThetas(other) == -scenario.getCosMidThetas(thets)
+						&& scenario.getSinMidThetas(other) == -scenario.getSinMidThetas(thets)) {
+					opposites[thets] = other;
+					break;
+				}
+			}
+		}
+		for (int thets = 0; thets < directions; thets++) {
+			// a direction repeated in the scenario only shares its tests with one opposite
+			if (opposites[thets] >= 0 && opposites[opposites[thets]] != thets) {
+				opposites[thets] = -1;
+			}
+		}
+		return opposites;
+	}
+
+	/**
+	 * Computes the bounds of the trig-free cone test for the current scenario.
+	 */
+	private void initCone() {
+		double coneCos = Math.cos(scenario.atan_k);
+		coneCos2Low = (coneCos - CONE_MARGIN) * (coneCos - CONE_MARGIN);
+		coneCos2High = (coneCos + CONE_MARGIN) * (coneCos + CONE_MARGIN);
+	}
+
 	protected double calculateBeta(double xi, double yi, double xj, double yj, int thetIndex) {
 		double num = ((xi - xj) * scenario.getCosMidThetas(thetIndex) + (yi - yj) * scenario.getSinMidThetas(thetIndex)
 				+ scenario.rkRatio);
@@ -174,15 +1138,7 @@ public class KusiakLayoutEvaluator extends WindFarmLayoutEvaluator {
 	}
 
 	protected double powOutput(double v) {
-		if (v < scenario.vCin) {
-			return 0;
-		} else if (v >= scenario.vCin && v <= scenario.vRated) {
-			return scenario.lambda * v + scenario.eta;
-		} else if (scenario.vCout > v && v > scenario.vRated) {
-			return scenario.PRated;
-		} else {
-			return 0;
-		}
+		return scenario.powOutput(v);
 	}
 
 	protected double calculateProjectedDistance(double xi, double yi, double xj, double yj, int thetIndex) {
@@ -194,22 +1150,6 @@ public class KusiakLayoutEvaluator extends WindFarmLayoutEvaluator {
 		return scenario.trans_CT / ((1.0 + scenario.krRatio * dij) * (1.0 + scenario.krRatio * dij));
 	}
 
-	@Override
-	public double getEnergyOutput() {
-
-		return energyCapture;
-	}
-
-	@Override
-	public double getWakeFreeRatio() {
-		return wakeFreeRatio;
-	}
-
-	@Override
-	public double getEnergyCost() {
-		return energyCost;
-	}
-
 	@Override
 	public double getTurbineRadius() {
 		return scenario.R;
@@ -0,0 +1,60 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The content of a layout as a map key: the coordinates of its turbines sorted by x then y, so that two
+ * layouts holding the same turbines in any order have equal keys, and layouts differing by any coordinate
+ * have different ones. The hash code is computed once from the sorted coordinates.
+ */
+public final class LayoutKey {
+
+	private static final Comparator<double[]> TURBINE_ORDER = new Comparator<double[]>() {
+		@Override
+		public int compare(double[] a, double[] b) {
+			int cmp = Double.compare(a[0], b[0]);
+			return cmp != 0 ? cmp : Double.compare(a[1], b[1]);
+		}
+	};
+
+	private final long[] coordinates; // bits of x and y of each turbine, in turbine order
+	private final int hash;
+
+	public LayoutKey(double[][] layout) {
+		double[][] turbines = layout.clone();
+		Arrays.sort(turbines, TURBINE_ORDER);
+		coordinates = new long[2 * turbines.length];
+		for (int i = 0; i < turbines.length; i++) {
+			// adding 0.0 turns -0.0 into 0.0, both are the same position
+			coordinates[2 * i] = Double.doubleToLongBits(turbines[i][0] + 0.0);
+			coordinates[2 * i + 1] = Double.doubleToLongBits(turbines[i][1] + 0.0);
+		}
+		hash = Arrays.hashCode(coordinates);
+	}
+
+	/**
+	 * Returns the number of turbines of the layout.
+	 */
+	public int size() {
+		return coordinates.length / 2;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LayoutKey)) {
+			return false;
+		}
+		LayoutKey other = (LayoutKey) obj;
+		return hash == other.hash && Arrays.equals(coordinates, other.coordinates);
+	}
+
+}
@@ -1,6 +1,8 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -26,6 +28,7 @@ public class MuLambdaES {
 	Random random;
 	int num_Turbines; // number of turbines in the wind farm.
 	int maxEvaluations;
+	EvaluationBudget budget; // evaluations this run may spend, none until setMaxEvaluations or setBudget
 	int num_pop; // number of population.
 	int mu; // number of parents selected.
 	int lambda; // number of population.
@@ -45,29 +48,47 @@ public class MuLambdaES {
 
 	int[][] blocks;
 
+	// parent-delta evaluation
+	boolean deltaEvaluation; // evaluate the children from the wake state of their parent
+	double maxDeltaFraction; // largest share of the turbines a child may change to be evaluated from its parent
+	ArrayList<EvaluationSession> sessions; // wake state of each individual, null when it is not kept
+	ArrayList<EvaluationSession> parents; // wake state of the parent of each individual, null for none
+
+	// screening at low fidelity
+	KusiakLayoutEvaluator screening; // null when the children are not screened
+	double screeningThreshold; // fitness a child must be able to beat to be fully evaluated
+	boolean[] rejected; // individuals rejected by the screening or cut off, left out of the selection
+	boolean cutoffEvaluation; // give up on the children that cannot beat the screening threshold
+
+	// greedy start
+	double greedyStep; // step of the candidate sites of the initial layouts, 0 for random initial layouts
+
 	public MuLambdaES(WindFarmLayoutEvaluator evaluator) {
 		wfle = evaluator;
 		random = new Random();
 		bestFitness = Double.MAX_VALUE;
 		blockSize = 1000;
+		budget = new EvaluationBudget(0);
+		maxDeltaFraction = 0.25;
+		screeningThreshold = Double.MAX_VALUE;
 	}
 
 	private void evaluate() {
 
 		double minFitness = Double.MAX_VALUE;
 
-		for (int p = 0; p < populations.size(); p++) {
-			double[][] layout = populations.get(p);
+		// The children that cannot beat the parents at low fidelity are not evaluated further. The others are
+		// evaluated at once, concurrently on the executor of the evaluator; with delta evaluation, into wake
+		// states their own children start from.
+		rejected = screen();
+		if (deltaEvaluation) {
+			evaluateSessions(rejected);
+		} else {
+			evaluateLayouts(rejected);
+		}
 
-			double coe;
-			if (wfle.checkConstraint(layout)) {
-				wfle.evaluate(layout);
-				coe = wfle.getEnergyCost();
-			} else {
-				coe = Double.MAX_VALUE;
-			}
+		for (int p = 0; p < populations.size(); p++) {
 
-			fitnesses[p] = coe;
 			if (fitnesses[p] < minFitness) {
 				minFitness = fitnesses[p];
 			}
@@ -82,9 +103,208 @@ public class MuLambdaES {
 		// System.out.println(wfle.getNumberOfEvaluation());
 	}
 
+	/**
+	 * Evaluates the children that were not rejected with evaluateBatch. No wake state is kept. With the cut-off
+	 * evaluation, the children that cannot beat the screening threshold are cut off: their fitness is the lower
+	 * bound of their cost of energy and they are rejected.
+	 */
+	private void evaluateLayouts(boolean[] rejected) {
+		ArrayList<double[][]> layouts = new ArrayList<>();
+		for (int p = 0; p < populations.size(); p++) {
+			if (!rejected[p]) {
+				layouts.add(populations.get(p));
+			}
+		}
+		double cutoff = cutoffEvaluation ? screeningThreshold : Double.MAX_VALUE;
+		List<EvaluationResult> results = wfle.evaluateBatch(layouts, budget, cutoff);
+
+		sessions = new ArrayList<>();
+		int next = 0;
+		for (int p = 0; p < populations.size(); p++) {
+			sessions.add(null);
+			if (!rejected[p]) {
+				EvaluationResult result = results.get(next++);
+				fitnesses[p] = result.getEnergyCost();
+				rejected[p] = result.getStatus() == EvaluationResult.Status.CUT_OFF;
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the children that were not rejected into wake states, kept for their own children: from a copy
+	 * of the state of their parent when they differ from it by at most maxDeltaFraction of their turbines, from
+	 * scratch otherwise, which costs the same as a full evaluation. As with evaluateBatch, the invalid children
+	 * do not use the budget and the ones beyond it are not evaluated; neither keeps a state.
+	 */
+	private void evaluateSessions(boolean[] rejected) {
+		final int size = populations.size();
+		final EvaluationSession[] states = new EvaluationSession[size];
+		final KusiakLayoutEvaluator evaluator = (KusiakLayoutEvaluator) wfle;
+
+		// the children close to their parent
+		ArrayList<Runnable> tasks = new ArrayList<>();
+		for (int p = 0; p < size; p++) {
+			if (rejected[p] || parents.get(p) == null) {
+				continue;
+			}
+			final int index = p;
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					double[][] layout = populations.get(index);
+					EvaluationSession session = new EvaluationSession(parents.get(index));
+					if (session.update(layout, (int) (maxDeltaFraction * layout.length)) >= 0) {
+						session.commit();
+						states[index] = session;
+					}
+				}
+			});
+		}
+		wfle.runTasks(tasks);
+
+		// the budget is granted at once, in order, to the valid children
+		boolean[] feasible = new boolean[size];
+		int count = 0;
+		for (int p = 0; p < size; p++) {
+			if (!rejected[p]) {
+				feasible[p] = states[p] != null ? states[p].isFeasible() : wfle.checkConstraint(populations.get(p));
+				if (feasible[p]) {
+					count++;
+				}
+			}
+		}
+		int granted = budget.tryConsume(count);
+		boolean[] evaluated = new boolean[size];
+		for (int p = 0; p < size && granted > 0; p++) {
+			if (feasible[p]) {
+				evaluated[p] = true;
+				granted--;
+			}
+		}
+
+		// the other children, from scratch
+		tasks.clear();
+		for (int p = 0; p < size; p++) {
+			if (!evaluated[p] || states[p] != null) {
+				continue;
+			}
+			final int index = p;
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					states[index] = new EvaluationSession(evaluator, populations.get(index));
+				}
+			});
+		}
+		wfle.runTasks(tasks);
+
+		sessions = new ArrayList<>();
+		for (int p = 0; p < size; p++) {
+			if (evaluated[p]) {
+				EvaluationBudget.recordEvaluation();
+				fitnesses[p] = states[p].getEnergyCost();
+				sessions.add(states[p]);
+			} else {
+				if (!rejected[p]) {
+					fitnesses[p] = Double.MAX_VALUE;
+				}
+				sessions.add(null);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the population at low fidelity and rejects the individuals that cannot beat the screening
+	 * threshold whatever the error of the low fidelity, their fitness is set to Double.MAX_VALUE. When fewer
+	 * than mu individuals are left, the valid ones of lowest bound are kept so that the parents can be
+	 * selected. The screening does not use the budget of the run.
+	 */
+	private boolean[] screen() {
+		boolean[] rejected = new boolean[populations.size()];
+		if (screening == null || screeningThreshold == Double.MAX_VALUE) {
+			return rejected;
+		}
+		// the options of the evaluator may have changed since setScreening
+		screening.copyOptions((KusiakLayoutEvaluator) wfle);
+		List<EvaluationResult> results = screening.evaluateBatch(populations);
+		double[] bounds = new double[populations.size()];
+		int accepted = 0;
+		for (int p = 0; p < populations.size(); p++) {
+			bounds[p] = screening.getEnergyCostLowerBound(results.get(p), populations.get(p).length);
+			if (bounds[p] >= screeningThreshold) {
+				rejected[p] = true;
+				fitnesses[p] = Double.MAX_VALUE;
+			} else {
+				accepted++;
+			}
+		}
+		for (; accepted < mu; accepted++) {
+			int best = -1;
+			for (int p = 0; p < populations.size(); p++) {
+				if (rejected[p] && bounds[p] < Double.MAX_VALUE && (best < 0 || bounds[p] < bounds[best])) {
+					best = p;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			rejected[best] = false;
+		}
+		return rejected;
+	}
+
+	/**
+	 * Moves the shuffled competitors rejected by the screening or cut off after the others, keeping their
+	 * order, and returns the number of the others, or of all competitors if every one was rejected.
+	 */
+	private int moveRejectedLast(int[] competitors) {
+		int[] ordered = new int[competitors.length];
+		int eligible = 0;
+		for (int competitor : competitors) {
+			if (!rejected[competitor]) {
+				ordered[eligible++] = competitor;
+			}
+		}
+		if (eligible == 0) {
+			return competitors.length;
+		}
+		int next = eligible;
+		for (int competitor : competitors) {
+			if (rejected[competitor]) {
+				ordered[next++] = competitor;
+			}
+		}
+		System.arraycopy(ordered, 0, competitors, 0, competitors.length);
+		return eligible;
+	}
+
+	/**
+	 * Sets the screening threshold to the fitness of the worst winner: a child that cannot beat it would not
+	 * improve on its parents.
+	 */
+	private void updateScreeningThreshold(int[] winners) {
+		double worst = 0;
+		for (int winner : winners) {
+			worst = Math.max(worst, fitnesses[winner]);
+		}
+		screeningThreshold = worst;
+	}
+
+	/**
+	 * Adds a child to the population, with the index of its parent in the previous population.
+	 */
+	private void addChild(double[][] child, ArrayList<EvaluationSession> previousSessions, int parent) {
+		populations.add(child);
+		parents.add(previousSessions.get(parent));
+	}
+
 	private void initialize() {
 
+		if (deltaEvaluation && !EvaluationSession.isSupported((KusiakLayoutEvaluator) wfle)) {
+			throw new IllegalStateException("Delta evaluation cannot follow the wake options of the evaluator");
+		}
 		populations = new ArrayList<double[][]>();
+		parents = new ArrayList<EvaluationSession>();
 
 		fitnesses = new double[lambda + mu];
 
@@ -116,6 +336,11 @@ public class MuLambdaES {
 
 		// initialize populations, should be done in an incremental way.
 		for (int p = 0; p < lambda; p++) {
+			if (greedyStep > 0) {
+				populations.add(greedyLayout(p));
+				parents.add(null);
+				continue;
+			}
 			double[][] layout = new double[num_Turbines][2];
 
 			for (int t = 0; t < num_Turbines; t++) {
@@ -137,8 +362,28 @@ public class MuLambdaES {
 			// System.out.println(wfle.checkConstraint(layout));
 
 			populations.add(layout);
+			parents.add(null);
+
+		}
+	}
 
+	/**
+	 * Builds the initial layout p with GreedyPlacement, on sites offset at random from the ones of the first
+	 * layout so that the layouts differ. When the sites run out, the layout is completed with random valid
+	 * locations.
+	 */
+	private double[][] greedyLayout(int p) {
+		double offsetX = p == 0 ? 0 : random.nextDouble() * greedyStep;
+		double offsetY = p == 0 ? 0 : random.nextDouble() * greedyStep;
+		GreedyPlacement placement = new GreedyPlacement((KusiakLayoutEvaluator) wfle, greedyStep, offsetX, offsetY);
+		double[][] placed = placement.build(num_Turbines);
+		double[][] layout = Arrays.copyOf(placed, num_Turbines);
+		for (int t = placed.length; t < num_Turbines; t++) {
+			do {
+				layout[t] = nextLocation();
+			} while (!validateDistance(layout, t));
 		}
+		return layout;
 	}
 
 	/**
@@ -517,7 +762,7 @@ public class MuLambdaES {
 
 		evaluate();
 
-		do {
+		while (!budget.isExhausted()) {
 
 			// From now on, lambda-mu evolutionary strategy takes over.
 			// Select best mu parents, discard the rest.
@@ -533,12 +778,14 @@ public class MuLambdaES {
 				// System.out.println(temp);
 			}
 
+			int eligible = moveRejectedLast(competitors);
+
 			for (int t = 0; t < winners.length; t++) {
 				int winner = -1;
 				double winner_fit = Double.MAX_VALUE;
 				for (int c = 0; c < lambda; c++) {
-					int competitor = competitors[random.nextInt(lambda)];
-					if (fitnesses[competitor] < winner_fit) {
+					int competitor = competitors[random.nextInt(Math.min(lambda, eligible))];
+					if (winner < 0 || fitnesses[competitor] < winner_fit) {
 						winner = competitor;
 						winner_fit = fitnesses[winner];
 						// System.out.println("---");
@@ -554,8 +801,11 @@ public class MuLambdaES {
 			// Generate lambda/mu children.
 			// Generator new individuals using winners.
 
+			updateScreeningThreshold(winners);
 			ArrayList<double[][]> temp = populations;
+			ArrayList<EvaluationSession> tempSessions = sessions;
 			populations = new ArrayList<>();
+			parents = new ArrayList<>();
 
 			for (int i = 0; i < lambda / mu; i++) {
 
@@ -567,14 +817,14 @@ public class MuLambdaES {
 
 					// Block Mutation Operator
 					if (operatorFlag.equals(_CROSSOVER)) {
-						populations.add(mutateBlock(temp.get(winners[j])));
+						addChild(mutateBlock(temp.get(winners[j])), tempSessions, winners[j]);
 					}
 
 					// Block Crossover Operator
 					if (operatorFlag.equals(_MUTATE)) {
 						double[][] temp_Parent_A = temp.get(winners[j]);
 						double[][] temp_Parent_B = temp.get(winners[j]);
-						populations.add(blockCrossover(temp_Parent_A, temp_Parent_B));
+						addChild(blockCrossover(temp_Parent_A, temp_Parent_B), tempSessions, winners[j]);
 					}
 				}
 
@@ -582,7 +832,7 @@ public class MuLambdaES {
 
 			evaluate();
 
-		} while (wfle.getNumberOfEvaluation() < maxEvaluations);
+		}
 
 		return bestFitness;
 
@@ -594,7 +844,7 @@ public class MuLambdaES {
 
 		evaluate();
 
-		do {
+		while (!budget.isExhausted()) {
 
 			// From now on, lambda-mu evolutionary strategy takes over.
 			// Select best mu parents, discard the rest.
@@ -610,12 +860,14 @@ public class MuLambdaES {
 				// System.out.println(temp);
 			}
 
+			int eligible = moveRejectedLast(competitors);
+
 			for (int t = 0; t < winners.length; t++) {
 				int winner = -1;
 				double winner_fit = Double.MAX_VALUE;
 				for (int c = 0; c < lambda; c++) {
-					int competitor = competitors[random.nextInt(lambda)];
-					if (fitnesses[competitor] < winner_fit) {
+					int competitor = competitors[random.nextInt(Math.min(lambda, eligible))];
+					if (winner < 0 || fitnesses[competitor] < winner_fit) {
 						winner = competitor;
 						winner_fit = fitnesses[winner];
 						// System.out.println("---");
@@ -631,12 +883,15 @@ public class MuLambdaES {
 			// Generate lambda/mu children.
 			// Generator new individuals using winners.
 
+			updateScreeningThreshold(winners);
 			ArrayList<double[][]> temp = populations;
+			ArrayList<EvaluationSession> tempSessions = sessions;
 			populations = new ArrayList<>();
+			parents = new ArrayList<>();
 
 			// Put the winners back into the population
 			for (int winner : winners) {
-				populations.add(temp.get(winner));
+				addChild(temp.get(winner), tempSessions, winner);
 			}
 
 			for (int i = 0; i < lambda / mu; i++) {
@@ -649,14 +904,14 @@ public class MuLambdaES {
 
 					// Block Mutation Operator
 					if (operatorFlag.equals(_CROSSOVER)) {
-						populations.add(mutateBlock(temp.get(winners[j])));
+						addChild(mutateBlock(temp.get(winners[j])), tempSessions, winners[j]);
 					}
 
 					// Block Crossover Operator
 					if (operatorFlag.equals(_MUTATE)) {
 						double[][] temp_Parent_A = temp.get(winners[j]);
 						double[][] temp_Parent_B = temp.get(winners[j]);
-						populations.add(blockCrossover(temp_Parent_A, temp_Parent_B));
+						addChild(blockCrossover(temp_Parent_A, temp_Parent_B), tempSessions, winners[j]);
 					}
 				}
 
@@ -664,7 +919,7 @@ public class MuLambdaES {
 
 			evaluate();
 
-		} while (wfle.getNumberOfEvaluation() < maxEvaluations);
+		}
 
 		return bestFitness;
 
@@ -699,7 +954,109 @@ public class MuLambdaES {
 	}
 
 	public void setMaxEvaluations(int maxEvaluations) {
-		this.maxEvaluations = maxEvaluations + wfle.getNumberOfEvaluation();
+		this.maxEvaluations = maxEvaluations;
+		this.budget = new EvaluationBudget(maxEvaluations);
+	}
+
+	public EvaluationBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Runs the ES with a budget shared with other runs or observed by the caller, instead of the one created
+	 * by setMaxEvaluations.
+	 */
+	public void setBudget(EvaluationBudget budget) {
+		this.budget = budget;
+		this.maxEvaluations = (int) Math.min(Integer.MAX_VALUE, budget.getLimit());
+	}
+
+	public boolean isDeltaEvaluation() {
+		return deltaEvaluation;
+	}
+
+	/**
+	 * Selects whether the children are evaluated from the wake state of their parent, which costs in
+	 * proportion to the turbines the operators changed instead of n^2. It is off by default: the incremental
+	 * costs of energy match full evaluations to about 1e-12 only, so a run with it does not reproduce a run
+	 * without it. It needs a KusiakLayoutEvaluator whose wake options EvaluationSession supports, see
+	 * EvaluationSession.isSupported.
+	 */
+	public void setDeltaEvaluation(boolean deltaEvaluation) {
+		if (deltaEvaluation && !(wfle instanceof KusiakLayoutEvaluator)) {
+			throw new IllegalArgumentException("Delta evaluation needs a KusiakLayoutEvaluator");
+		}
+		if (deltaEvaluation && !EvaluationSession.isSupported((KusiakLayoutEvaluator) wfle)) {
+			throw new IllegalArgumentException("Delta evaluation cannot follow the wake options of the evaluator");
+		}
+		this.deltaEvaluation = deltaEvaluation;
+	}
+
+	public double getMaxDeltaFraction() {
+		return maxDeltaFraction;
+	}
+
+	/**
+	 * Sets the largest share of the turbines a child may differ by from its parent to be evaluated from the
+	 * parent state, the others are evaluated from scratch.
+	 */
+	public void setMaxDeltaFraction(double maxDeltaFraction) {
+		this.maxDeltaFraction = maxDeltaFraction;
+	}
+
+	/**
+	 * Screens the children at low fidelity before evaluating them: the directions whose omega is below
+	 * minOmega are dropped and every speedStep wind speed bins merged (see WindScenario.reduce). Only the
+	 * children that may beat the worst of their parents given the error bound of the low fidelity are fully
+	 * evaluated. The screening evaluator follows the energy mode, wake options and executor of the evaluator
+	 * of the run, taken again before each generation. The screening evaluations do not use the budget, but
+	 * show in the global statistics. (0, 1) disables the screening. It needs a KusiakLayoutEvaluator.
+	 */
+	public void setScreening(double minOmega, int speedStep) {
+		if (minOmega <= 0 && speedStep == 1) {
+			screening = null;
+			return;
+		}
+		if (!(wfle instanceof KusiakLayoutEvaluator)) {
+			throw new IllegalArgumentException("Screening needs a KusiakLayoutEvaluator");
+		}
+		screening = new KusiakLayoutEvaluator();
+		screening.initialize(((KusiakLayoutEvaluator) wfle).fullScenario);
+		screening.setFidelity(minOmega, speedStep);
+		screening.copyOptions((KusiakLayoutEvaluator) wfle);
+	}
+
+	public boolean isCutoffEvaluation() {
+		return cutoffEvaluation;
+	}
+
+	/**
+	 * Selects whether the children are evaluated with a cut-off, see
+	 * KusiakLayoutEvaluator.evaluateResult(double[][], double): from the second generation on, a child gives
+	 * up as soon as it cannot beat the worst of the parents selected in the previous generation, the screening
+	 * threshold, and is then only selected when no other child can be. A cut-off evaluation uses the budget as
+	 * a full one but computes fewer directions. It is off by default, and has no effect with the delta
+	 * evaluation. It needs an evaluator supporting the cut-off, such as KusiakLayoutEvaluator, the others
+	 * evaluate every child fully.
+	 */
+	public void setCutoffEvaluation(boolean cutoffEvaluation) {
+		this.cutoffEvaluation = cutoffEvaluation;
+	}
+
+	public double getGreedyStart() {
+		return greedyStep;
+	}
+
+	/**
+	 * Starts from layouts built by GreedyPlacement on candidate sites step apart instead of random layouts, 0
+	 * (the default) restores the random ones. The first layout uses the sites from the corner of the farm, the
+	 * others sites offset at random. It needs a KusiakLayoutEvaluator.
+	 */
+	public void setGreedyStart(double step) {
+		if (step > 0 && !(wfle instanceof KusiakLayoutEvaluator)) {
+			throw new IllegalArgumentException("Greedy start needs a KusiakLayoutEvaluator");
+		}
+		greedyStep = Math.max(0, step);
 	}
 
 	public String getOperatorFlag() {
@@ -3,6 +3,7 @@ package main;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -37,6 +38,7 @@ public class MuLambdaESML {
 
 	// layout array with energy cost.
 	HashMap<double[][], Double> layoutsData;
+	HashSet<LayoutKey> layoutKeys; // contents of the collected layouts, the map only knows array identities
 	Classifier classifier;
 	FastVector attributes;
 	Instances trainData;
@@ -55,6 +57,7 @@ public class MuLambdaESML {
 	int num_Turbines; // number of turbines in the wind farm.
 	int maxEvaluations;
 	int trainEvaluations;
+	EvaluationBudget budget; // evaluations this run may spend, training included, none until set
 	int num_pop; // number of population.
 	int mu; // number of parents selected.
 	int lambda; // number of population.
@@ -78,22 +81,20 @@ public class MuLambdaESML {
 		random = new Random();
 		bestFitness = Double.MAX_VALUE;
 		blockSize = 1000;
+		budget = new EvaluationBudget(0);
 	}
 
 	public void evaluateES() {
 
 		double minFitness = Double.MAX_VALUE;
 
+		// The lambda children are evaluated at once, concurrently on the executor of the evaluator.
+		List<EvaluationResult> results = wfle.evaluateBatch(populations.subList(0, lambda), budget);
+
 		for (int p = 0; p < lambda; p++) {
 			double[][] layout = populations.get(p);
 
-			double coe;
-			if (wfle.checkConstraint(layout)) {
-				wfle.evaluate(layout);
-				coe = wfle.getEnergyCost();
-			} else {
-				coe = Double.MAX_VALUE;
-			}
+			double coe = results.get(p).getEnergyCost();
 
 			fitnesses[p] = coe;
 			if (fitnesses[p] < minFitness) {
@@ -106,7 +107,7 @@ public class MuLambdaESML {
 				System.out.println(bestFitness);
 			}
 
-			if (layoutsData.size() < trainEvaluations && !layoutsData.containsKey(layout)) {
+			if (layoutsData.size() < trainEvaluations && layoutKeys.add(new LayoutKey(layout))) {
 				layoutsData.put(layout, coe);
 			}
 
@@ -133,11 +134,13 @@ public class MuLambdaESML {
 			fitnesses[p] = coe_predicted;
 			if (fitnesses[p] < minFitness) {
 
-				wfle.evaluate(layout);
-				coe_actual = wfle.getEnergyCost();
+				if (budget.tryConsume()) {
+					// the layout passed checkConstraint above
+					coe_actual = wfle.evaluateChecked(layout, false).getEnergyCost();
 
-				if (coe_actual < coe_predicted) {
-					fitnesses[p] = coe_actual;
+					if (coe_actual < coe_predicted) {
+						fitnesses[p] = coe_actual;
+					}
 				}
 
 				minFitness = fitnesses[p];
@@ -168,6 +171,7 @@ public class MuLambdaESML {
 		trainData.setClassIndex(trainData.numAttributes() - 1);
 
 		layoutsData = new HashMap<double[][], Double>();
+		layoutKeys = new HashSet<LayoutKey>();
 
 		populations = new ArrayList<double[][]>();
 		fitnesses = new double[lambda];
@@ -818,9 +822,9 @@ public class MuLambdaESML {
 		do {
 			breeding();
 			evaluateES();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < trainEvaluations);
+		} while (budget.getUsed() < trainEvaluations && !budget.isExhausted());
 
-		System.out.println("Training Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Training Evaluations:" + budget.getUsed());
 		System.out.println("Colected Data Size:" + layoutsData.size());
 
 		// Using collected data to train a surrogate model, then use it as a predictor.
@@ -829,9 +833,9 @@ public class MuLambdaESML {
 		do {
 			breeding();
 			evaluate_ML();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < maxEvaluations);
+		} while (!budget.isExhausted());
 
-		System.out.println("Searching Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Searching Evaluations:" + budget.getUsed());
 
 		return bestFitness;
 
@@ -874,11 +878,29 @@ public class MuLambdaESML {
 	}
 
 	public void setMaxEvaluations(int maxEvaluations) {
-		this.maxEvaluations = maxEvaluations + WindFarmLayoutEvaluator.getNumberOfEvaluation();
+		this.maxEvaluations = maxEvaluations;
+		this.budget = new EvaluationBudget(maxEvaluations);
 	}
 
+	/**
+	 * Sets how many evaluations of the budget are spent collecting training data before the surrogate model
+	 * takes over.
+	 */
 	public void setTrainEvaluations(int trainEvaluations) {
-		this.trainEvaluations = trainEvaluations + WindFarmLayoutEvaluator.getNumberOfEvaluation();
+		this.trainEvaluations = trainEvaluations;
+	}
+
+	public EvaluationBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Runs the ES with a budget shared with other runs or observed by the caller, instead of the one created
+	 * by setMaxEvaluations.
+	 */
+	public void setBudget(EvaluationBudget budget) {
+		this.budget = budget;
+		this.maxEvaluations = (int) Math.min(Integer.MAX_VALUE, budget.getLimit());
 	}
 
 	public String getOperatorFlag() {
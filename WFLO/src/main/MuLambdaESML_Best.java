@@ -65,7 +65,7 @@ public class MuLambdaESML_Best extends MuLambdaESML {
 		// individuals.
 		Iterator layoutIterator = FitnessToLayout_Map.entrySet().iterator();
 		int counter = 0;
-		while (layoutIterator.hasNext() && counter < lambda_star) {
+		while (layoutIterator.hasNext() && counter < lambda_star && budget.tryConsume()) {
 			counter++;
 			Entry<Double, double[][]> entry = (Entry<Double, double[][]>) layoutIterator.next();
 			// Using the expensive real evaluation function to re-evaluate these lambda_star individuals.
@@ -149,9 +149,9 @@ public class MuLambdaESML_Best extends MuLambdaESML {
 		do {
 			breeding();
 			evaluateES();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < trainEvaluations);
+		} while (budget.getUsed() < trainEvaluations && !budget.isExhausted());
 
-		System.out.println("Training Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Training Evaluations:" + budget.getUsed());
 		System.out.println("Colected Data Size:" + layoutsData.size());
 
 		// Using collected data to train a surrogate model, then use it as a predictor.
@@ -160,9 +160,9 @@ public class MuLambdaESML_Best extends MuLambdaESML {
 		do {
 			breeding_ML();
 			evaluate_ML();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < maxEvaluations);
+		} while (!budget.isExhausted());
 
-		System.out.println("Searching Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Searching Evaluations:" + budget.getUsed());
 
 		System.out.println("Best Fitness in Raw: " + bestFitness);
 		bestFitness = calculateRealFitness();
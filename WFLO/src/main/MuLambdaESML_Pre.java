@@ -67,8 +67,12 @@ public class MuLambdaESML_Pre extends MuLambdaESML {
 		// Using the expensive real evaluation function to re-evaluate these lambda_star individuals.
 		ArrayList<Double> temp_fitnesses = new ArrayList<>();
 		for (int i = 0; i < lambda; i++) {
-			wfle.evaluate(populations.get(tempFitnesses.indexOf(fitnesses[i])));
-			temp_fitnesses.add(wfle.getEnergyCost());
+			if (budget.tryConsume()) {
+				wfle.evaluate(populations.get(tempFitnesses.indexOf(fitnesses[i])));
+				temp_fitnesses.add(wfle.getEnergyCost());
+			} else {
+				temp_fitnesses.add(fitnesses[i]);
+			}
 		}
 
 		fitnesses_best = new double[lambda];
@@ -148,9 +152,9 @@ public class MuLambdaESML_Pre extends MuLambdaESML {
 		do {
 			breeding();
 			evaluateES();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < trainEvaluations);
+		} while (budget.getUsed() < trainEvaluations && !budget.isExhausted());
 
-		System.out.println("Training Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Training Evaluations:" + budget.getUsed());
 		System.out.println("Colected Data Size:" + layoutsData.size());
 
 		// Using collected data to train a surrogate model, then use it as a predictor.
@@ -159,9 +163,9 @@ public class MuLambdaESML_Pre extends MuLambdaESML {
 		do {
 			breeding_ML();
 			evaluate_ML();
-		} while (WindFarmLayoutEvaluator.getNumberOfEvaluation() < maxEvaluations);
+		} while (!budget.isExhausted());
 
-		System.out.println("Searching Evaluations:" + WindFarmLayoutEvaluator.getNumberOfEvaluation());
+		System.out.println("Searching Evaluations:" + budget.getUsed());
 
 		return bestFitness;
 
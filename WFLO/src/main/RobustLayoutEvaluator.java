@@ -0,0 +1,317 @@
+package main;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates layouts against several wind scenarios at once, e.g. ks1, ks2 and obs_00 to obs_09, and aggregates
+ * their costs of energy, by their mean or by the worst of them. The scenarios must share the turbines and the
+ * wind directions (R, CT, the wake decay k and the sectors), and may differ by their wind distributions,
+ * their farm and their obstacles. The velocity deficits only depend on the layout and on those shared
+ * parameters, so they are computed once per layout by the deficit evaluator, whose farm is the one shared by
+ * the scenarios: a valid layout lies in every farm, so the wake reach and the deficit table of that farm
+ * cover it whatever the farm of each scenario. Only the integration of the energy over the wind speeds is
+ * done for every scenario, once per direction for the turbines out of any wake; it stays per scenario as
+ * the scenarios differ by their winds. The cost of energy of each scenario is the one
+ * KusiakLayoutEvaluator.evaluate gives on that scenario, bit for bit.
+ *
+ * A layout is valid when it satisfies the constraints of every scenario. The outputs per turbine and per
+ * direction of the aggregate are the mean of the outputs of the scenarios, or the outputs of the worst one.
+ */
+public class RobustLayoutEvaluator extends WindFarmLayoutEvaluator {
+
+	public static final String _MEAN = "mean"; // the mean of the costs of energy of the scenarios
+	public static final String _WORST = "worst"; // the highest cost of energy of the scenarios
+
+	protected final KusiakLayoutEvaluator[] evaluators; // one per scenario, they integrate the energy
+	protected final KusiakLayoutEvaluator deficits; // on the farm shared by the scenarios, computes the deficits
+	protected String aggregation;
+	private volatile EvaluationResult[] lastScenarios; // the results of the last layout evaluated with evaluate
+
+	public RobustLayoutEvaluator(List<WindScenario> scenarios, String aggregation) {
+		if (scenarios.isEmpty()) {
+			throw new IllegalArgumentException("No scenario");
+		}
+		WindScenario first = scenarios.get(0);
+		evaluators = new KusiakLayoutEvaluator[scenarios.size()];
+		for (int s = 0; s < evaluators.length; s++) {
+			WindScenario scenario = scenarios.get(s);
+			if (scenario.R != first.R || scenario.CT != first.CT || scenario.k != first.k
+					|| !Arrays.deepEquals(scenario.thetas, first.thetas)) {
+				throw new IllegalArgumentException("Scenario " + s + " does not share the turbines and the wind directions of the first one");
+			}
+			evaluators[s] = new KusiakLayoutEvaluator();
+			evaluators[s].initialize(scenario);
+		}
+		deficits = new KusiakLayoutEvaluator();
+		deficits.initialize(first.crop(getFarmWidth(), getFarmHeight()));
+		setAggregation(aggregation);
+	}
+
+	public String getAggregation() {
+		return aggregation;
+	}
+
+	/**
+	 * Selects how the costs of energy of the scenarios are aggregated: _MEAN or _WORST.
+	 */
+	public void setAggregation(String aggregation) {
+		if (!aggregation.equals(_MEAN) && !aggregation.equals(_WORST)) {
+			throw new IllegalArgumentException("Unknown aggregation: " + aggregation);
+		}
+		this.aggregation = aggregation;
+	}
+
+	/**
+	 * Returns the evaluator of scenario s. Its energy mode is used to integrate the energy of the scenario,
+	 * its wake options are not used.
+	 */
+	public KusiakLayoutEvaluator getEvaluator(int s) {
+		return evaluators[s];
+	}
+
+	/**
+	 * Returns the evaluator that computes the deficits of all the scenarios, on the farm they share. Its wake
+	 * options (sweep, deficit table, far field, parallel mode...) are the ones used.
+	 */
+	public KusiakLayoutEvaluator getDeficitEvaluator() {
+		return deficits;
+	}
+
+	public int getScenarioCount() {
+		return evaluators.length;
+	}
+
+	/**
+	 * Sets the energy mode of the evaluators of all the scenarios, see KusiakLayoutEvaluator.setEnergyMode.
+	 */
+	public void setEnergyMode(String energyMode) {
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			evaluator.setEnergyMode(energyMode);
+		}
+	}
+
+	/**
+	 * Evaluates the layout and keeps its aggregate result for the getters. Concurrent callers should use
+	 * evaluateResult or evaluateScenarios instead.
+	 */
+	@Override
+	public double evaluate(double[][] layout) {
+		EvaluationResult[] results = evaluateScenarios(layout, false);
+		lastScenarios = results;
+		return keepLastEvaluation(layout, aggregate(results)).getEnergyCost();
+	}
+
+	@Override
+	public EvaluationResult evaluateResult(double[][] layout, boolean withOutputs) {
+		return aggregate(evaluateScenarios(layout, withOutputs));
+	}
+
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, boolean withOutputs) {
+		return aggregate(evaluateValid(layout, withOutputs));
+	}
+
+	/**
+	 * Evaluates the layout on every scenario and returns their results, in the order of the scenarios. It
+	 * counts as one evaluation. An invalid layout is INFEASIBLE on every scenario.
+	 */
+	public EvaluationResult[] evaluateScenarios(double[][] layout, boolean withOutputs) {
+		if (!checkConstraint(layout)) {
+			EvaluationBudget.recordEvaluation();
+			EvaluationResult[] results = new EvaluationResult[evaluators.length];
+			Arrays.fill(results, EvaluationResult.INFEASIBLE);
+			return results;
+		}
+		return evaluateValid(layout, withOutputs);
+	}
+
+	private EvaluationResult[] evaluateValid(double[][] layout, boolean withOutputs) {
+		EvaluationBudget.recordEvaluation();
+		return calculateScenarios(layout, withOutputs);
+	}
+
+	/**
+	 * Computes the deficits of the valid layout once, with the deficit evaluator, then the energy and the result
+	 * of every scenario. This is not counted as an evaluation.
+	 */
+	private EvaluationResult[] calculateScenarios(double[][] layout, boolean withOutputs) {
+		EvaluationWorkspace ws = deficits.workspaces.get();
+		ws.load(layout, deficits.scenario.thetas.length);
+		deficits.calculateDeficits(ws);
+
+		EvaluationResult[] results = new EvaluationResult[evaluators.length];
+		for (int s = 0; s < evaluators.length; s++) {
+			KusiakLayoutEvaluator evaluator = evaluators[s];
+			boolean useTable = evaluator.energyMode.equals(KusiakLayoutEvaluator._WBLCDF_TABLE);
+			boolean useResponse = evaluator.energyMode.equals(KusiakLayoutEvaluator._RESPONSE_TABLE);
+			double[][] outputs = withOutputs ? new double[ws.spe.length][ws.n] : null;
+			// the turbines out of any wake share the energy of their direction
+			double[] wakeFree = new double[ws.spe.length];
+			for (int thets = 0; thets < ws.spe.length; thets++) {
+				wakeFree[thets] = evaluator.calculateDeficitEnergy(0, thets, useTable, useResponse);
+			}
+			double energyCapture = 0;
+			for (int turb = 0; turb < ws.n; turb++) {
+				for (int thets = 0; thets < ws.spe.length; thets++) {
+					double deficit = ws.spe[thets][turb];
+					double energy = deficit == 0 ? wakeFree[thets]
+							: evaluator.calculateDeficitEnergy(deficit, thets, useTable, useResponse);
+					energyCapture += energy;
+					if (outputs != null) {
+						outputs[thets][turb] = energy;
+					}
+				}
+			}
+			WindScenario scenario = evaluator.scenario;
+			double wakeFreeRatio = energyCapture / (scenario.wakeFreeEnergy * ws.n);
+			double energyCost = wakeFreeRatio <= 0 ? Double.MAX_VALUE
+					: evaluator.calculateEnergyCost(ws.n, wakeFreeRatio);
+			results[s] = new EvaluationResult(EvaluationResult.Status.EVALUATED, energyCost, wakeFreeRatio,
+					energyCapture, outputs, scenario.wakeFreeEnergy);
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the aggregate of the results of the scenarios of one layout, in the order of the scenarios: with
+	 * _MEAN the mean of their costs, wake free ratios and energies, with _WORST the result of the scenario with
+	 * the highest cost.
+	 */
+	public EvaluationResult aggregate(EvaluationResult[] results) {
+		if (!results[0].isEvaluated()) {
+			return results[0];
+		}
+		if (aggregation.equals(_WORST)) {
+			EvaluationResult worst = results[0];
+			for (EvaluationResult result : results) {
+				if (result.getEnergyCost() > worst.getEnergyCost()) {
+					worst = result;
+				}
+			}
+			return worst;
+		}
+		double energyCost = 0;
+		double wakeFreeRatio = 0;
+		double energyOutput = 0;
+		double wakeFreeEnergy = 0;
+		double[][] outputs = results[0].hasOutputs() ? results[0].getEnergyOutputs() : null;
+		for (int s = 0; s < results.length; s++) {
+			energyCost += results[s].getEnergyCost();
+			wakeFreeRatio += results[s].getWakeFreeRatio();
+			energyOutput += results[s].getEnergyOutput();
+			wakeFreeEnergy += evaluators[s].scenario.wakeFreeEnergy;
+			if (outputs != null && s > 0) {
+				double[][] other = results[s].getEnergyOutputs();
+				for (int thets = 0; thets < outputs.length; thets++) {
+					for (int turb = 0; turb < outputs[thets].length; turb++) {
+						outputs[thets][turb] += other[thets][turb];
+					}
+				}
+			}
+		}
+		int count = results.length;
+		if (outputs != null) {
+			for (double[] row : outputs) {
+				for (int turb = 0; turb < row.length; turb++) {
+					row[turb] /= count;
+				}
+			}
+		}
+		return new EvaluationResult(EvaluationResult.Status.EVALUATED, energyCost / count, wakeFreeRatio / count,
+				energyOutput / count, outputs, wakeFreeEnergy / count);
+	}
+
+	/**
+	 * Returns the results of every scenario, with their outputs, for the last layout evaluated with evaluate,
+	 * null if none. Like the getters, it describes the last layout evaluated by any thread.
+	 */
+	public EvaluationResult[] getScenarioResults() {
+		if (getLastResult(true) == null) {
+			return null;
+		}
+		return lastScenarios.clone();
+	}
+
+	/**
+	 * Computes the results of every scenario again with their outputs, kept for getScenarioResults, and
+	 * returns their aggregate.
+	 */
+	@Override
+	protected EvaluationResult calculateOutputs(double[][] layout) {
+		EvaluationResult[] scenarios = calculateScenarios(layout, true);
+		lastScenarios = scenarios;
+		return aggregate(scenarios);
+	}
+
+	/**
+	 * Returns true if the layout satisfies the constraints of every scenario.
+	 */
+	@Override
+	public boolean checkConstraint(double[][] layout) {
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			if (!evaluator.checkConstraint(layout)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public double getTurbineRadius() {
+		return evaluators[0].getTurbineRadius();
+	}
+
+	/**
+	 * Returns the width of the smallest farm of the scenarios.
+	 */
+	@Override
+	public double getFarmWidth() {
+		double width = Double.MAX_VALUE;
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			width = Math.min(width, evaluator.getFarmWidth());
+		}
+		return width;
+	}
+
+	/**
+	 * Returns the height of the smallest farm of the scenarios.
+	 */
+	@Override
+	public double getFarmHeight() {
+		double height = Double.MAX_VALUE;
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			height = Math.min(height, evaluator.getFarmHeight());
+		}
+		return height;
+	}
+
+	@Override
+	public double getMinDistance() {
+		double minDistance = 0;
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			minDistance = Math.max(minDistance, evaluator.getMinDistance());
+		}
+		return minDistance;
+	}
+
+	/**
+	 * Returns the obstacles of all the scenarios.
+	 */
+	@Override
+	public double[][] getObstacles() {
+		int count = 0;
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			count += evaluator.getObstacles().length;
+		}
+		double[][] obstacles = new double[count][];
+		int next = 0;
+		for (KusiakLayoutEvaluator evaluator : evaluators) {
+			for (double[] obstacle : evaluator.getObstacles()) {
+				obstacles[next++] = obstacle;
+			}
+		}
+		return obstacles;
+	}
+
+}
@@ -0,0 +1,101 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the farm used to check the security distance between turbines in linear time. The cells
+ * are slightly narrower than the minimum distance, so two turbines closer than the minimum distance are always
+ * in the same or in neighbouring cells, whatever the rounding of the square root, of the cell indices and of
+ * the squared distance, and each turbine only has to be compared with the turbines of the 3 x 3 cells around
+ * it. The buffers are reused between checks.
+ * 
+ * The coordinates must have been checked to lie inside the farm before they are loaded into the grid.
+ */
+public class SpacingGrid {
+
+	// relative margin of the cell size below the minimum distance, far above the rounding errors
+	private static final double CELL_MARGIN = 1e-9;
+
+	double minDist; // squared minimum distance
+	double cellSize;
+	int cols;
+	int rows;
+	int[] head; // first turbine of each cell, -1 if empty
+	int[] next; // next turbine in the same cell, -1 at the end
+	double[] x;
+	double[] y;
+	int n;
+
+	public SpacingGrid(double minDist) {
+		this.minDist = minDist;
+		this.cellSize = Math.sqrt(minDist) * (1 - CELL_MARGIN);
+		this.x = new double[0];
+		this.y = new double[0];
+		this.next = new int[0];
+		this.head = new int[0];
+	}
+
+	public void load(double[][] layout, double width, double height) {
+		reset(layout.length, width, height);
+		for (int i = 0; i < layout.length; i++) {
+			x[i] = layout[i][0];
+			y[i] = layout[i][1];
+		}
+		n = layout.length;
+	}
+
+	public void load(double[] xs, double[] ys, int n, double width, double height) {
+		reset(n, width, height);
+		System.arraycopy(xs, 0, x, 0, n);
+		System.arraycopy(ys, 0, y, 0, n);
+		this.n = n;
+	}
+
+	private void reset(int size, double width, double height) {
+		if (x.length < size) {
+			x = new double[size];
+			y = new double[size];
+			next = new int[size];
+		}
+		cols = (int) (width / cellSize) + 1;
+		rows = (int) (height / cellSize) + 1;
+		if (head.length < cols * rows) {
+			head = new int[cols * rows];
+		}
+		Arrays.fill(head, 0, cols * rows, -1);
+	}
+
+	int cellX(double px) {
+		return Math.min(cols - 1, (int) (px / cellSize));
+	}
+
+	int cellY(double py) {
+		return Math.min(rows - 1, (int) (py / cellSize));
+	}
+
+	/**
+	 * Returns true if no two loaded turbines are closer than the minimum distance. The squared distance is
+	 * computed as in KusiakLayoutEvaluator.checkConstraint, so the answer is the same as the pairwise check.
+	 */
+	public boolean isSpaced() {
+		for (int i = 0; i < n; i++) {
+			int cx = cellX(x[i]);
+			int cy = cellY(y[i]);
+			// compare with the turbines already inserted in the neighbouring cells
+			for (int gx = Math.max(0, cx - 1); gx <= Math.min(cols - 1, cx + 1); gx++) {
+				for (int gy = Math.max(0, cy - 1); gy <= Math.min(rows - 1, cy + 1); gy++) {
+					for (int j = head[gx * rows + gy]; j != -1; j = next[j]) {
+						double dist = (x[i] - x[j]) * (x[i] - x[j]) + (y[i] - y[j]) * (y[i] - y[j]);
+						if (dist < minDist) {
+							return false;
+						}
+					}
+				}
+			}
+			next[i] = head[cx * rows + cy];
+			head[cx * rows + cy] = i;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,183 @@
+package main;
+
+/**
+ * Evaluates layouts on the records of a WindTimeSeries rather than on the Weibull distributions of its
+ * scenario. The velocity deficits are computed by a KusiakLayoutEvaluator on the scenario restricted to the
+ * directions the series has records in, so the wakes are computed once per occupied direction whatever the
+ * number of records. A turbine with the deficit d in a direction sees the speed v (1 - d) for every record of
+ * speed v, as the scale factor c (1 - d) of the Weibull model, and its energy output is its mean power over the
+ * records. The wake free energy is the mean power of a turbine without wake, and the cost of energy is
+ * computed from both as by KusiakLayoutEvaluator.
+ *
+ * The occupied speed bins of the series are copied when the evaluator is created; records added to the series
+ * afterwards are not taken into account.
+ */
+public class TimeSeriesLayoutEvaluator extends WindFarmLayoutEvaluator {
+
+	protected final WindTimeSeries series;
+	protected final KusiakLayoutEvaluator evaluator; // on the occupied directions, computes the deficits
+	protected final int[] directions; // the occupied directions of the series, one per direction of evaluator
+	private final int[] binStarts; // the bins of direction d are [binStarts[d], binStarts[d + 1])
+	private final double[] binSpeeds; // mean speed of the records of each occupied bin
+	private final double[] binWeights; // share of the records of each occupied bin
+
+	public TimeSeriesLayoutEvaluator(WindTimeSeries series) {
+		if (series.getRecords() == 0) {
+			throw new IllegalArgumentException("The time series has no record");
+		}
+		this.series = series;
+		WindScenario scenario = series.getScenario();
+		int occupied = 0;
+		int bins = 0;
+		for (int index = 0; index < series.counts.length; index++) {
+			if (series.counts[index] > 0) {
+				bins++;
+			}
+		}
+		for (int thets = 0; thets < scenario.thetas.length; thets++) {
+			if (series.getRecords(thets) > 0) {
+				occupied++;
+			}
+		}
+		directions = new int[occupied];
+		binStarts = new int[occupied + 1];
+		binSpeeds = new double[bins];
+		binWeights = new double[bins];
+		double records = series.getRecords();
+		double wakeFreeEnergy = 0;
+		int d = 0;
+		int b = 0;
+		for (int thets = 0; thets < scenario.thetas.length; thets++) {
+			if (series.getRecords(thets) == 0) {
+				continue;
+			}
+			directions[d] = thets;
+			binStarts[d] = b;
+			for (int bin = 0; bin < series.bins; bin++) {
+				long count = series.counts[thets * series.bins + bin];
+				if (count > 0) {
+					binSpeeds[b] = series.speedSums[thets * series.bins + bin] / count;
+					binWeights[b] = count / records;
+					wakeFreeEnergy += binWeights[b] * scenario.powOutput(binSpeeds[b]);
+					b++;
+				}
+			}
+			d++;
+		}
+		binStarts[occupied] = b;
+		evaluator = new KusiakLayoutEvaluator();
+		evaluator.initialize(scenario.restrict(directions, wakeFreeEnergy));
+	}
+
+	/**
+	 * Returns the evaluator computing the deficits, whose wake options (sweep, far field...) apply.
+	 */
+	public KusiakLayoutEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Returns the indices in the scenario of the series of the occupied directions, in the order of the
+	 * directions of the outputs.
+	 */
+	public int[] getDirections() {
+		return directions.clone();
+	}
+
+	/**
+	 * Returns the mean power of a turbine without wake over the records.
+	 */
+	public double getWakeFreeEnergy() {
+		return evaluator.scenario.wakeFreeEnergy;
+	}
+
+	@Override
+	public double evaluate(double[][] layout) {
+		return keepLastEvaluation(layout, evaluateResult(layout, false)).getEnergyCost();
+	}
+
+	@Override
+	public EvaluationResult evaluateResult(double[][] layout, boolean withOutputs) {
+		if (!checkConstraint(layout)) {
+			EvaluationBudget.recordEvaluation();
+			return EvaluationResult.INFEASIBLE;
+		}
+		return evaluateChecked(layout, withOutputs);
+	}
+
+	/**
+	 * Computes the deficits of the valid layout in the occupied directions, then the mean power of every
+	 * turbine in every direction over the speed bins of the direction.
+	 */
+	@Override
+	public EvaluationResult evaluateChecked(double[][] layout, boolean withOutputs) {
+		EvaluationBudget.recordEvaluation();
+		return calculateResult(layout, withOutputs);
+	}
+
+	/**
+	 * Computes the result of the valid layout, without counting it as an evaluation.
+	 */
+	private EvaluationResult calculateResult(double[][] layout, boolean withOutputs) {
+		EvaluationWorkspace ws = evaluator.workspaces.get();
+		ws.load(layout, directions.length);
+		evaluator.calculateDeficits(ws);
+
+		WindScenario scenario = evaluator.scenario;
+		double[][] outputs = withOutputs ? new double[directions.length][ws.n] : null;
+		double energyCapture = 0;
+		for (int turb = 0; turb < ws.n; turb++) {
+			for (int d = 0; d < directions.length; d++) {
+				double factor = 1.0 - ws.spe[d][turb];
+				double energy = 0;
+				for (int b = binStarts[d]; b < binStarts[d + 1]; b++) {
+					energy += binWeights[b] * scenario.powOutput(binSpeeds[b] * factor);
+				}
+				energyCapture += energy;
+				if (outputs != null) {
+					outputs[d][turb] = energy;
+				}
+			}
+		}
+		double wakeFreeRatio = energyCapture / (scenario.wakeFreeEnergy * ws.n);
+		double energyCost = wakeFreeRatio <= 0 ? Double.MAX_VALUE : evaluator.calculateEnergyCost(ws.n, wakeFreeRatio);
+		return new EvaluationResult(EvaluationResult.Status.EVALUATED, energyCost, wakeFreeRatio, energyCapture,
+				outputs, scenario.wakeFreeEnergy);
+	}
+
+	@Override
+	protected EvaluationResult calculateOutputs(double[][] layout) {
+		return calculateResult(layout, true);
+	}
+
+	@Override
+	public boolean checkConstraint(double[][] layout) {
+		return evaluator.checkConstraint(layout);
+	}
+
+	@Override
+	public double getTurbineRadius() {
+		return evaluator.getTurbineRadius();
+	}
+
+	@Override
+	public double getFarmWidth() {
+		return evaluator.getFarmWidth();
+	}
+
+	@Override
+	public double getFarmHeight() {
+		return evaluator.getFarmHeight();
+	}
+
+	@Override
+	public double getMinDistance() {
+		return evaluator.getMinDistance();
+	}
+
+	@Override
+	public double[][] getObstacles() {
+		return evaluator.getObstacles();
+	}
+
+}
@@ -0,0 +1,343 @@
+package main;
+
+/**
+ * Approximates, Barnes-Hut style, the velocity deficits of the turbines of a very large layout. The turbines
+ * are grouped in a quadtree; for a turbine and a direction, the tree is walked from the root and a node is
+ *
+ * - skipped when its bounding box lies outside the wake cone of the turbine,
+ * - aggregated when its box lies inside the cone, does not straddle the turbine in the wind direction and is
+ * small next to its distance: its n turbines then add n g(d) + n g''(d) var / 2 to the sum of the squared
+ * deficits, where g(d) = (trans_CT / (1 + krRatio d))^2, d is the distance from the centroid of the node along
+ * the wind and var the variance of the downwind coordinates of the node,
+ * - otherwise opened, down to the leaves whose turbines are tested one by one as in calculateWakeTurbine.
+ *
+ * The extents of the nodes in the frame of each direction are computed when the tree is built, so the tree
+ * can be walked for several directions at once. The opening ratio bounds the size of an aggregated node
+ * relative to R/k + d, the distance from the apex of the wake cones; 0 never aggregates, which gives the
+ * exact deficits summed in another order.
+ */
+final class WakeQuadtree {
+
+	static final int LEAF_SIZE = 8;
+	static final int MAX_DEPTH = 32;
+	static final int STACK_SIZE = 3 * MAX_DEPTH + 4; // nodes pending at most in a walk, depth first
+
+	int[] order; // turbines grouped by node, each node covers order[start, start + count)
+	// nodes, by index
+	int size;
+	double[] minX;
+	double[] maxX;
+	double[] minY;
+	double[] maxY;
+	double[] centerX; // centroid of the turbines of the node
+	double[] centerY;
+	double[] varXX; // covariance of the coordinates of the turbines of the node
+	double[] varXY;
+	double[] varYY;
+	int[] start;
+	int[] count;
+	int[] children; // four per node, -1 for none; all -1 for a leaf
+	// extent of the turbines of each node in the frame of each direction, [direction][node]: a = t + k s and
+	// b = t - k s as in WakeSweep, and the downwind coordinate s
+	double[][] lowA;
+	double[][] highA;
+	double[][] lowB;
+	double[][] highB;
+	double[][] lowS;
+	double[][] highS;
+
+	WakeQuadtree() {
+		order = new int[0];
+		allocate(16);
+	}
+
+	/**
+	 * Builds the tree of the n first turbines of x and y, and the extents of its nodes in every direction of
+	 * the scenario.
+	 */
+	void build(WindScenario scenario, double[] x, double[] y, int n) {
+		if (order.length < n) {
+			order = new int[n];
+		}
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		size = 0;
+		if (n > 0) {
+			build(x, y, 0, n, 0);
+		}
+
+		int directions = scenario.thetas.length;
+		if (lowA == null || lowA.length != directions || lowA[0].length < size) {
+			int capacity = Math.max(size, start.length);
+			lowA = new double[directions][capacity];
+			highA = new double[directions][capacity];
+			lowB = new double[directions][capacity];
+			highB = new double[directions][capacity];
+			lowS = new double[directions][capacity];
+			highS = new double[directions][capacity];
+		}
+		double k = scenario.k;
+		for (int thets = 0; thets < directions; thets++) {
+			double cos = scenario.getCosMidThetas(thets);
+			double sin = scenario.getSinMidThetas(thets);
+			double[] la = lowA[thets];
+			double[] ha = highA[thets];
+			double[] lb = lowB[thets];
+			double[] hb = highB[thets];
+			double[] ls = lowS[thets];
+			double[] hs = highS[thets];
+			// the children of a node come after it, so the nodes are done in reverse order
+			for (int node = size - 1; node >= 0; node--) {
+				la[node] = Double.POSITIVE_INFINITY;
+				ha[node] = Double.NEGATIVE_INFINITY;
+				lb[node] = Double.POSITIVE_INFINITY;
+				hb[node] = Double.NEGATIVE_INFINITY;
+				ls[node] = Double.POSITIVE_INFINITY;
+				hs[node] = Double.NEGATIVE_INFINITY;
+				boolean leaf = true;
+				for (int q = 0; q < 4; q++) {
+					int child = children[4 * node + q];
+					if (child >= 0) {
+						leaf = false;
+						la[node] = Math.min(la[node], la[child]);
+						ha[node] = Math.max(ha[node], ha[child]);
+						lb[node] = Math.min(lb[node], lb[child]);
+						hb[node] = Math.max(hb[node], hb[child]);
+						ls[node] = Math.min(ls[node], ls[child]);
+						hs[node] = Math.max(hs[node], hs[child]);
+					}
+				}
+				if (leaf) {
+					for (int p = start[node]; p < start[node] + count[node]; p++) {
+						int turb = order[p];
+						double s = x[turb] * cos + y[turb] * sin;
+						double t = -x[turb] * sin + y[turb] * cos;
+						la[node] = Math.min(la[node], t + k * s);
+						ha[node] = Math.max(ha[node], t + k * s);
+						lb[node] = Math.min(lb[node], t - k * s);
+						hb[node] = Math.max(hb[node], t - k * s);
+						ls[node] = Math.min(ls[node], s);
+						hs[node] = Math.max(hs[node], s);
+					}
+				}
+			}
+		}
+	}
+
+	private int build(double[] x, double[] y, int from, int to, int depth) {
+		int node = size++;
+		if (node >= start.length) {
+			allocate(2 * start.length);
+		}
+		double sx = 0;
+		double sy = 0;
+		double lowX = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY;
+		double lowY = Double.POSITIVE_INFINITY;
+		double highY = Double.NEGATIVE_INFINITY;
+		for (int p = from; p < to; p++) {
+			int turb = order[p];
+			sx += x[turb];
+			sy += y[turb];
+			lowX = Math.min(lowX, x[turb]);
+			highX = Math.max(highX, x[turb]);
+			lowY = Math.min(lowY, y[turb]);
+			highY = Math.max(highY, y[turb]);
+		}
+		int n = to - from;
+		double cx = sx / n;
+		double cy = sy / n;
+		double vxx = 0;
+		double vxy = 0;
+		double vyy = 0;
+		for (int p = from; p < to; p++) {
+			int turb = order[p];
+			double dx = x[turb] - cx;
+			double dy = y[turb] - cy;
+			vxx += dx * dx;
+			vxy += dx * dy;
+			vyy += dy * dy;
+		}
+		minX[node] = lowX;
+		maxX[node] = highX;
+		minY[node] = lowY;
+		maxY[node] = highY;
+		centerX[node] = cx;
+		centerY[node] = cy;
+		varXX[node] = vxx / n;
+		varXY[node] = vxy / n;
+		varYY[node] = vyy / n;
+		start[node] = from;
+		count[node] = n;
+		for (int q = 0; q < 4; q++) {
+			children[4 * node + q] = -1;
+		}
+		if (n <= LEAF_SIZE || depth >= MAX_DEPTH || (lowX == highX && lowY == highY)) {
+			return node;
+		}
+
+		// partition order[from, to) into the four quadrants around the middle of the box
+		double midX = (lowX + highX) / 2;
+		double midY = (lowY + highY) / 2;
+		int splitY = partition(y, from, to, midY);
+		int splitXLow = partition(x, from, splitY, midX);
+		int splitXHigh = partition(x, splitY, to, midX);
+		// the children array may grow while a child is built, so it is only read afterwards
+		int child = buildChild(x, y, from, splitXLow, depth);
+		children[4 * node] = child;
+		child = buildChild(x, y, splitXLow, splitY, depth);
+		children[4 * node + 1] = child;
+		child = buildChild(x, y, splitY, splitXHigh, depth);
+		children[4 * node + 2] = child;
+		child = buildChild(x, y, splitXHigh, to, depth);
+		children[4 * node + 3] = child;
+		return node;
+	}
+
+	private int buildChild(double[] x, double[] y, int from, int to, int depth) {
+		return to > from ? build(x, y, from, to, depth + 1) : -1;
+	}
+
+	/**
+	 * Moves the turbines of order[from, to) whose coordinate is below middle first and returns the position of
+	 * the first other one.
+	 */
+	private int partition(double[] coordinates, int from, int to, double middle) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			if (coordinates[order[low]] < middle) {
+				low++;
+			} else {
+				int turb = order[low];
+				order[low] = order[high];
+				order[high] = turb;
+				high--;
+			}
+		}
+		return low;
+	}
+
+	private void allocate(int capacity) {
+		minX = grow(minX, capacity);
+		maxX = grow(maxX, capacity);
+		minY = grow(minY, capacity);
+		maxY = grow(maxY, capacity);
+		centerX = grow(centerX, capacity);
+		centerY = grow(centerY, capacity);
+		varXX = grow(varXX, capacity);
+		varXY = grow(varXY, capacity);
+		varYY = grow(varYY, capacity);
+		start = grow(start, capacity);
+		count = grow(count, capacity);
+		children = grow(children, 4 * capacity);
+	}
+
+	private static double[] grow(double[] array, int capacity) {
+		double[] grown = new double[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+		}
+		return grown;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+		}
+		return grown;
+	}
+
+	/**
+	 * Computes the approximate velocity deficit of every turbine of the tree in the direction thetIndex.
+	 *
+	 * @param evaluator
+	 *            provides the scenario and the exact deficit of a pair
+	 * @param x
+	 *            x coordinates of the turbines the tree was built on
+	 * @param y
+	 *            y coordinates of the turbines the tree was built on
+	 * @param n
+	 *            number of turbines
+	 * @param thetIndex
+	 *            the wind direction
+	 * @param openingRatio
+	 *            the largest size of an aggregated node relative to its distance from the apex of the cone
+	 * @param deficits
+	 *            receives the deficit of turbine i at index i
+	 * @param stack
+	 *            the nodes left to walk, of STACK_SIZE at least; the tree is shared by the threads computing
+	 *            the directions, so each one brings its own
+	 */
+	void computeDirection(KusiakLayoutEvaluator evaluator, double[] x, double[] y, int n, int thetIndex,
+			double openingRatio, double[] deficits, int[] stack) {
+		WindScenario scenario = evaluator.scenario;
+		double cos = scenario.getCosMidThetas(thetIndex);
+		double sin = scenario.getSinMidThetas(thetIndex);
+		double k = scenario.k;
+		double[] la = lowA[thetIndex];
+		double[] ha = highA[thetIndex];
+		double[] lb = lowB[thetIndex];
+		double[] hb = highB[thetIndex];
+		double[] ls = lowS[thetIndex];
+		double[] hs = highS[thetIndex];
+		// outside beyond the reach of the sweep, inside within R minus the same slack
+		double outer = WakeSweep.reach(scenario);
+		double inner = 2 * scenario.R - outer;
+		double transCT2 = scenario.trans_CT * scenario.trans_CT;
+
+		for (int turb = 0; turb < n; turb++) {
+			double xt = x[turb];
+			double yt = y[turb];
+			double st = xt * cos + yt * sin;
+			double tt = -xt * sin + yt * cos;
+			double at = tt + k * st;
+			double bt = tt - k * st;
+			double velDef = 0;
+			int top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				int node = stack[--top];
+				if (la[node] >= at + outer || hb[node] <= bt - outer) {
+					continue; // no turbine of the node wakes this one
+				}
+				boolean containsTurbine = xt >= minX[node] && xt <= maxX[node] && yt >= minY[node]
+						&& yt <= maxY[node];
+				if (!containsTurbine && ha[node] < at + inner && lb[node] > bt - inner
+						&& (ls[node] > st || hs[node] < st)) {
+					double ds = Math.abs(st - (centerX[node] * cos + centerY[node] * sin));
+					double width = Math.max(maxX[node] - minX[node], maxY[node] - minY[node]);
+					if (width < openingRatio * (scenario.rkRatio + ds)) {
+						double variance = cos * cos * varXX[node] + 2 * cos * sin * varXY[node]
+								+ sin * sin * varYY[node];
+						double d = 1.0 + scenario.krRatio * ds;
+						double g = transCT2 / (d * d * d * d);
+						double curvature = 20 * scenario.krRatio * scenario.krRatio * g / (d * d);
+						velDef += count[node] * (g + curvature * variance / 2);
+						continue;
+					}
+				}
+				int firstChild = 4 * node;
+				boolean leaf = true;
+				for (int q = 0; q < 4; q++) {
+					if (children[firstChild + q] >= 0) {
+						stack[top++] = children[firstChild + q];
+						leaf = false;
+					}
+				}
+				if (leaf) {
+					for (int p = start[node]; p < start[node] + count[node]; p++) {
+						int oturb = order[p];
+						if (oturb != turb) {
+							velDef += evaluator.calculateSquaredDeficit(xt, yt, x[oturb], y[oturb], thetIndex);
+						}
+					}
+				}
+			}
+			deficits[turb] = Math.sqrt(velDef);
+		}
+	}
+
+}
@@ -0,0 +1,365 @@
+package main;
+
+/**
+ * Finds, for one wind direction, the turbines waking each turbine of a layout without testing every pair.
+ * 
+ * In the frame of the wind direction, with s the downwind and t the lateral coordinate, turbine j wakes
+ * turbine i when |t_i - t_j| < k (s_i - s_j + R/k), which is the calculateBeta test. With a = t + k s and
+ * b = t - k s this becomes a_j < a_i + R and b_j > b_i - R. The turbines are swept by decreasing a: the
+ * turbines whose a is too large for the current turbine are removed from the list of candidates, which is
+ * kept sorted by decreasing b, so the candidates of a turbine are the first alive entries of that list. Each
+ * candidate is then tested with KusiakLayoutEvaluator.calculateSquaredDeficit, in turbine order, so the
+ * deficits are the same as the ones of the pairwise loop of calculateWakeTurbine.
+ */
+public class WakeSweep {
+
+	double[] a; // cone coordinate t + k s of each turbine
+	double[] b; // cone coordinate t - k s of each turbine
+	int[] orderA; // turbines sorted by increasing a
+	double[] sortedA;
+	int[] orderB; // turbines sorted by decreasing b
+	double[] sortedB; // -b, increasing
+	int[] rankB; // position of each turbine in orderB
+	int[] alive; // next alive position in orderB, union-find style
+	int[] candidates;
+	float[] fs; // single precision downwind coordinate of each turbine, for computeDirectionFloat
+	float[] fa;
+	float[] fb;
+	float[] fsortedA;
+	float[] fsortedB;
+	final int[] treeStack = new int[WakeQuadtree.STACK_SIZE]; // for WakeQuadtree.computeDirection
+
+	public WakeSweep() {
+		ensureCapacity(0);
+	}
+
+	void ensureCapacity(int n) {
+		if (a == null || a.length < n) {
+			a = new double[n];
+			b = new double[n];
+			orderA = new int[n];
+			sortedA = new double[n];
+			orderB = new int[n];
+			sortedB = new double[n];
+			rankB = new int[n];
+			alive = new int[n + 1];
+			candidates = new int[n];
+			fs = new float[n];
+			fa = new float[n];
+			fb = new float[n];
+			fsortedA = new float[n];
+			fsortedB = new float[n];
+		}
+	}
+
+	/**
+	 * Computes the velocity deficit of every turbine in the direction thetIndex.
+	 * 
+	 * @param evaluator
+	 *            provides the scenario and the exact cone and deficit functions
+	 * @param x
+	 *            x coordinates of the turbines
+	 * @param y
+	 *            y coordinates of the turbines
+	 * @param n
+	 *            number of turbines
+	 * @param thetIndex
+	 *            the wind direction
+	 * @param deficits
+	 *            receives the deficit of turbine i at index i
+	 */
+	public void computeDirection(KusiakLayoutEvaluator evaluator, double[] x, double[] y, int n, int thetIndex,
+			double[] deficits) {
+		computeDirection(evaluator, x, y, n, thetIndex, deficits, null);
+	}
+
+	/**
+	 * Computes the velocity deficit of every turbine in the direction thetIndex, and the number of turbines
+	 * waking it, those with a positive squared deficit, at index i of wakers unless it is null.
+	 */
+	void computeDirection(KusiakLayoutEvaluator evaluator, double[] x, double[] y, int n, int thetIndex,
+			double[] deficits, int[] wakers) {
+		WindScenario scenario = evaluator.scenario;
+		ensureCapacity(n);
+		double cos = scenario.getCosMidThetas(thetIndex);
+		double sin = scenario.getSinMidThetas(thetIndex);
+		double k = scenario.k;
+		double reach = reach(scenario);
+
+		for (int j = 0; j < n; j++) {
+			double s = x[j] * cos + y[j] * sin;
+			double t = -x[j] * sin + y[j] * cos;
+			a[j] = t + k * s;
+			b[j] = t - k * s;
+			orderA[j] = j;
+			sortedA[j] = a[j];
+			orderB[j] = j;
+			sortedB[j] = -b[j];
+		}
+		sort(sortedA, orderA, n);
+		sort(sortedB, orderB, n);
+		for (int r = 0; r < n; r++) {
+			rankB[orderB[r]] = r;
+			alive[r] = r;
+		}
+		alive[n] = n;
+
+		int top = n - 1;
+		for (int ia = n - 1; ia >= 0; ia--) {
+			int turb = orderA[ia];
+			// remove the turbines that cannot wake this one, nor any turbine with a smaller a
+			while (top >= 0 && sortedA[top] >= a[turb] + reach) {
+				int r = rankB[orderA[top]];
+				alive[r] = r + 1;
+				top--;
+			}
+			// the candidates are the alive turbines with -b < -b_turb + R
+			int end = upperBound(sortedB, n, -b[turb] + reach);
+			int count = 0;
+			for (int r = find(0); r < end; r = find(r + 1)) {
+				if (orderB[r] != turb) {
+					candidates[count++] = orderB[r];
+				}
+			}
+			sort(candidates, count);
+
+			double xt = x[turb];
+			double yt = y[turb];
+			double velDef = 0;
+			int waking = 0;
+			for (int c = 0; c < count; c++) {
+				int oturb = candidates[c];
+				double deficit = evaluator.calculateSquaredDeficit(xt, yt, x[oturb], y[oturb], thetIndex);
+				if (deficit > 0) {
+					velDef += deficit;
+					waking++;
+				}
+			}
+			deficits[turb] = Math.sqrt(velDef);
+			if (wakers != null) {
+				wakers[turb] = waking;
+			}
+		}
+	}
+
+	/**
+	 * Same as computeDirection in single precision, with the analytic kernel whatever the wake options of the
+	 * evaluator. The rotation, the cone coordinates, the sorts and the deficits are computed in float, and the
+	 * bound on a and b is R itself: every candidate is then in the wake cone, a_j < a_i + R and b_j > b_i - R
+	 * being the calculateBeta test, so the candidates are summed as they are found, without sorting them or
+	 * testing them again. The sums thus differ from the double ones by the rounding of float, and by the pairs
+	 * lying on the edge of a cone, which the float coordinates may put on the other side.
+	 */
+	void computeDirectionFloat(KusiakLayoutEvaluator evaluator, float[] x, float[] y, int n, int thetIndex,
+			double[] deficits) {
+		WindScenario scenario = evaluator.scenario;
+		ensureCapacity(n);
+		float cos = (float) scenario.getCosMidThetas(thetIndex);
+		float sin = (float) scenario.getSinMidThetas(thetIndex);
+		float k = (float) scenario.k;
+		float reach = (float) scenario.R;
+		float krRatio = (float) scenario.krRatio;
+		float transCT = (float) scenario.trans_CT;
+
+		for (int j = 0; j < n; j++) {
+			float s = x[j] * cos + y[j] * sin;
+			float t = -x[j] * sin + y[j] * cos;
+			fs[j] = s;
+			fa[j] = t + k * s;
+			fb[j] = t - k * s;
+			orderA[j] = j;
+			fsortedA[j] = fa[j];
+			orderB[j] = j;
+			fsortedB[j] = -fb[j];
+		}
+		sort(fsortedA, orderA, n);
+		sort(fsortedB, orderB, n);
+		for (int r = 0; r < n; r++) {
+			rankB[orderB[r]] = r;
+			alive[r] = r;
+		}
+		alive[n] = n;
+
+		int top = n - 1;
+		for (int ia = n - 1; ia >= 0; ia--) {
+			int turb = orderA[ia];
+			while (top >= 0 && fsortedA[top] >= fa[turb] + reach) {
+				int r = rankB[orderA[top]];
+				alive[r] = r + 1;
+				top--;
+			}
+			int end = upperBound(fsortedB, n, -fb[turb] + reach);
+			float st = fs[turb];
+			float velDef = 0;
+			for (int r = find(0); r < end; r = find(r + 1)) {
+				int oturb = orderB[r];
+				if (oturb != turb) {
+					float d = 1 + krRatio * Math.abs(st - fs[oturb]);
+					float curDef = transCT / (d * d);
+					velDef += curDef * curDef;
+				}
+			}
+			deficits[turb] = Math.sqrt(velDef);
+		}
+	}
+
+	/**
+	 * Returns the bound on a and b within which a turbine may be waked: R, plus a slack covering the rounding
+	 * errors of the rotation. The sweep only has to keep every waking turbine, the exact test is done by
+	 * KusiakLayoutEvaluator.calculateSquaredDeficit.
+	 */
+	static double reach(WindScenario scenario) {
+		double slack = 1e-9 * (scenario.width + scenario.height + scenario.rkRatio) + scenario.R * 1e-9;
+		return scenario.R + slack;
+	}
+
+	/**
+	 * Returns the first alive position at or after r.
+	 */
+	private int find(int r) {
+		int root = r;
+		while (alive[root] != root) {
+			root = alive[root];
+		}
+		while (alive[r] != root) {
+			int next = alive[r];
+			alive[r] = root;
+			r = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Returns the number of values of the increasing array keys that are smaller than limit.
+	 */
+	private static int upperBound(double[] keys, int n, double limit) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < limit) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int upperBound(float[] keys, int n, float limit) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < limit) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Heap sort of keys in increasing order, applying the same permutation to values. Does not allocate.
+	 */
+	static void sort(double[] keys, int[] values, int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(keys, values, i, n);
+		}
+		for (int end = n - 1; end > 0; end--) {
+			double key = keys[0];
+			keys[0] = keys[end];
+			keys[end] = key;
+			int value = values[0];
+			values[0] = values[end];
+			values[end] = value;
+			siftDown(keys, values, 0, end);
+		}
+	}
+
+	private static void siftDown(double[] keys, int[] values, int i, int n) {
+		while (2 * i + 1 < n) {
+			int child = 2 * i + 1;
+			if (child + 1 < n && keys[child + 1] > keys[child]) {
+				child++;
+			}
+			if (keys[i] >= keys[child]) {
+				return;
+			}
+			double key = keys[i];
+			keys[i] = keys[child];
+			keys[child] = key;
+			int value = values[i];
+			values[i] = values[child];
+			values[child] = value;
+			i = child;
+		}
+	}
+
+	private static void sort(float[] keys, int[] values, int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(keys, values, i, n);
+		}
+		for (int end = n - 1; end > 0; end--) {
+			float key = keys[0];
+			keys[0] = keys[end];
+			keys[end] = key;
+			int value = values[0];
+			values[0] = values[end];
+			values[end] = value;
+			siftDown(keys, values, 0, end);
+		}
+	}
+
+	private static void siftDown(float[] keys, int[] values, int i, int n) {
+		while (2 * i + 1 < n) {
+			int child = 2 * i + 1;
+			if (child + 1 < n && keys[child + 1] > keys[child]) {
+				child++;
+			}
+			if (keys[i] >= keys[child]) {
+				return;
+			}
+			float key = keys[i];
+			keys[i] = keys[child];
+			keys[child] = key;
+			int value = values[i];
+			values[i] = values[child];
+			values[child] = value;
+			i = child;
+		}
+	}
+
+	/**
+	 * Heap sort of values in increasing order. Does not allocate.
+	 */
+	static void sort(int[] values, int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(values, i, n);
+		}
+		for (int end = n - 1; end > 0; end--) {
+			int value = values[0];
+			values[0] = values[end];
+			values[end] = value;
+			siftDown(values, 0, end);
+		}
+	}
+
+	private static void siftDown(int[] values, int i, int n) {
+		while (2 * i + 1 < n) {
+			int child = 2 * i + 1;
+			if (child + 1 < n && values[child + 1] > values[child]) {
+				child++;
+			}
+			if (values[i] >= values[child]) {
+				return;
+			}
+			int value = values[i];
+			values[i] = values[child];
+			values[child] = value;
+			i = child;
+		}
+	}
+
+}
@@ -1,4 +1,14 @@
 package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * The class WindFarmLayoutEvaluator is an interface to easily exchange the
  * evaluation function of the wind farm layouts. The evaluator has to be initialized
@@ -7,9 +17,26 @@ package main;
  * turbine, per direction, etc.) are available by the means of the corresponding
  * getters. Each time the evaluation function is used, a global counter is 
  * increased. This counter is available with the function getNumberOfEvaluation.
+ * The number of evaluations a run may spend is limited by its own
+ * EvaluationBudget rather than by this global counter.
+ * 
+ * evaluateResult returns all the outputs of one evaluation at once and can be
+ * called concurrently on a shared evaluator; the getters only describe the last
+ * layout evaluated with evaluate.
  */
 public abstract class WindFarmLayoutEvaluator {
-	protected static int nEvals=0;
+	/**
+	 * Runs the evaluations of a batch one after the other in the calling thread.
+	 */
+	public static final Executor CALLER_THREAD = new Executor() {
+		@Override
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
+
+	protected Executor executor = ForkJoinPool.commonPool();
+	private volatile LastEvaluation lastEvaluation; // the last layout evaluated with evaluate
 
 	/**
 	 * 2015 WIND FARM LAYOUT OPTIMIZATION EVALUATION FUNCTION
@@ -22,6 +49,256 @@ public abstract class WindFarmLayoutEvaluator {
 	 */
 	public abstract double evaluate(double[][] layout);
 
+	/**
+	 * Evaluates a given layout and returns all the outputs of the evaluation.
+	 * This method does not change the state read by the getters, so it can be
+	 * called by several threads at once. Calling this method increases the
+	 * number of evaluations counter. The constraints are checked by the
+	 * evaluation itself, so a caller needing both the feasibility and the cost
+	 * of a layout should call this method rather than checkConstraint then
+	 * evaluate, which would check the layout twice.
+	 * @param layout The layout to evaluate
+	 * @param withOutputs true to keep the energy outputs per turbine and per
+	 * direction in the result
+	 * @return the result of the evaluation, infeasible if the layout is invalid
+	 */
+	public abstract EvaluationResult evaluateResult(double[][] layout, boolean withOutputs);
+
+	/**
+	 * Evaluates a layout the caller has already accepted with checkConstraint,
+	 * without checking it a second time. The result of an invalid layout is
+	 * undefined. Like evaluateResult, it does not change the state read by the
+	 * getters and increases the number of evaluations counter. By default the
+	 * layout is simply evaluated with evaluateResult.
+	 * @param layout The valid layout to evaluate
+	 * @param withOutputs true to keep the energy outputs per turbine and per
+	 * direction in the result
+	 * @return the result of the evaluation
+	 */
+	public EvaluationResult evaluateChecked(double[][] layout, boolean withOutputs) {
+		return evaluateResult(layout, withOutputs);
+	}
+
+	/**
+	 * Evaluates a layout the caller has already accepted with checkConstraint,
+	 * without its outputs, unless it cannot beat cutoffCoE: the evaluators
+	 * supporting it then give up early and return a CUT_OFF result, whose
+	 * cost of energy is a lower bound not smaller than cutoffCoE. By default
+	 * the layout is simply evaluated fully with evaluateChecked.
+	 * @param layout The valid layout to evaluate
+	 * @param cutoffCoE The cost of energy the layout must beat
+	 * @return the result of the evaluation
+	 */
+	public EvaluationResult evaluateChecked(double[][] layout, double cutoffCoE) {
+		return evaluateChecked(layout, false);
+	}
+
+	/**
+	 * Evaluates a batch of layouts, e.g. a whole generation, without budget.
+	 * @see #evaluateBatch(List, EvaluationBudget)
+	 */
+	public List<EvaluationResult> evaluateBatch(List<double[][]> layouts) {
+		return evaluateBatch(layouts, EvaluationBudget.unlimited());
+	}
+
+	/**
+	 * Evaluates a batch of layouts on the executor of the evaluator and returns
+	 * their results in the order of the layouts. The invalid layouts are
+	 * detected first and do not use the budget; the valid ones are then granted
+	 * by the budget at once, in order, and the ones beyond the budget are
+	 * SKIPPED. Each layout is checked once, the valid ones are evaluated with
+	 * evaluateChecked. The per turbine and per direction outputs are not kept.
+	 * This method doesn't change the state read by the getters.
+	 * @param layouts The layouts to evaluate
+	 * @param budget The budget of the run
+	 * @return one result per layout, in the same order
+	 */
+	public List<EvaluationResult> evaluateBatch(List<double[][]> layouts, EvaluationBudget budget) {
+		return evaluateBatch(layouts, budget, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Same as evaluateBatch(List, EvaluationBudget), except that the valid
+	 * layouts are evaluated with evaluateChecked(double[][], double), so the
+	 * ones that cannot beat cutoffCoE may be CUT_OFF. Each of them uses the
+	 * budget as a full evaluation. Double.MAX_VALUE evaluates every layout
+	 * fully.
+	 * @param layouts The layouts to evaluate
+	 * @param budget The budget of the run
+	 * @param cutoffCoE The cost of energy the layouts must beat
+	 * @return one result per layout, in the same order
+	 */
+	public List<EvaluationResult> evaluateBatch(List<double[][]> layouts, EvaluationBudget budget,
+			final double cutoffCoE) {
+		final EvaluationResult[] results = new EvaluationResult[layouts.size()];
+		int feasible = 0;
+		for (int i = 0; i < results.length; i++) {
+			if (checkConstraint(layouts.get(i))) {
+				feasible++;
+			} else {
+				results[i] = EvaluationResult.INFEASIBLE;
+			}
+		}
+		int granted = budget.tryConsume(feasible);
+
+		List<Runnable> tasks = new ArrayList<>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null) {
+				continue;
+			}
+			if (granted == 0) {
+				results[i] = EvaluationResult.SKIPPED;
+				continue;
+			}
+			granted--;
+			final int index = i;
+			final double[][] layout = layouts.get(i);
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					results[index] = cutoffCoE == Double.MAX_VALUE ? evaluateChecked(layout, false)
+							: evaluateChecked(layout, cutoffCoE);
+				}
+			});
+		}
+		runTasks(tasks);
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Runs the tasks on the executor of the evaluator and waits for all of
+	 * them. A task the executor rejects, e.g. because the pool set with
+	 * setExecutor was shut down, runs in the calling thread instead, so every
+	 * task granted by a budget is run. The first failure of a task is thrown
+	 * once all of them are done.
+	 * @param tasks The tasks to run, independent of each other
+	 */
+	protected void runTasks(List<Runnable> tasks) {
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		Executor executor = getExecutor();
+		for (final Runnable task : tasks) {
+			Runnable counted = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			try {
+				executor.execute(counted);
+			} catch (RejectedExecutionException e) {
+				counted.run();
+			}
+		}
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the evaluations", e);
+		}
+		if (failure.get() != null) {
+			throw new IllegalStateException("An evaluation failed", failure.get());
+		}
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor running the evaluations of evaluateBatch: the common
+	 * ForkJoinPool (the default), a fixed pool such as
+	 * Executors.newFixedThreadPool, or CALLER_THREAD to evaluate one layout after
+	 * the other in the calling thread.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Keeps a copy of the layout with its result, without its outputs, for
+	 * the getters, and returns the result. The outputs per turbine and per
+	 * direction are computed by calculateOutputs the first time a getter asks
+	 * for them. Called by evaluate.
+	 * @param layout The layout evaluated
+	 * @param result Its result
+	 * @return the result
+	 */
+	protected EvaluationResult keepLastEvaluation(double[][] layout, EvaluationResult result) {
+		lastEvaluation = new LastEvaluation(layout, result);
+		return result;
+	}
+
+	/**
+	 * Forgets the last layout evaluated, e.g. when the scenario changes.
+	 */
+	protected void clearLastEvaluation() {
+		lastEvaluation = null;
+	}
+
+	/**
+	 * Returns the result of the last layout evaluated with evaluate, with its
+	 * outputs when withOutputs is true, computing them the first time.
+	 * @param withOutputs true for the result with its outputs
+	 * @return the result; null if no layout have been evaluated
+	 */
+	protected EvaluationResult getLastResult(boolean withOutputs) {
+		LastEvaluation last = lastEvaluation;
+		if (last == null) {
+			return null;
+		}
+		return withOutputs ? last.withOutputs() : last.getResult();
+	}
+
+	/**
+	 * Computes again the result of a valid layout kept by keepLastEvaluation,
+	 * with its outputs per turbine and per direction. This is not counted as
+	 * an evaluation.
+	 * @param layout The valid layout
+	 * @return its result with its outputs
+	 */
+	protected abstract EvaluationResult calculateOutputs(double[][] layout);
+
+	/**
+	 * The last layout evaluated with evaluate, and its result. The layout is
+	 * kept so that the outputs, which the evaluation does not compute, can be
+	 * computed when a getter asks for them.
+	 */
+	private final class LastEvaluation {
+		private final double[][] layout;
+		private EvaluationResult result;
+
+		LastEvaluation(double[][] layout, EvaluationResult result) {
+			this.layout = new double[layout.length][];
+			for (int turb = 0; turb < layout.length; turb++) {
+				this.layout[turb] = layout[turb].clone();
+			}
+			this.result = result;
+		}
+
+		synchronized EvaluationResult getResult() {
+			return result;
+		}
+
+		/**
+		 * Returns the result with its outputs, computing them for a valid
+		 * layout the first time.
+		 */
+		synchronized EvaluationResult withOutputs() {
+			if (result.isEvaluated() && !result.hasOutputs()) {
+				result = calculateOutputs(layout);
+			}
+			return result;
+		}
+	}
+
 	/**
 	 * Returns the energy outputs per wind turbine and per direction of the last
 	 * layout evaluated, ordered as in the layout vector provided to the
@@ -30,7 +307,10 @@ public abstract class WindFarmLayoutEvaluator {
 	 * method doesn't increase the number of evaluation counter.
 	 * @return The energy outputs; null if no layout have been evaluated
 	 */
-	public abstract double[][] getEnergyOutputs();
+	public double[][] getEnergyOutputs() {
+		LastEvaluation last = lastEvaluation;
+		return last == null ? null : last.withOutputs().getEnergyOutputs();
+	}
 
 	/**
 	 * Returns the wake free ratio per wind turbine of the last layout
@@ -40,7 +320,10 @@ public abstract class WindFarmLayoutEvaluator {
 	 * method doesn't increase the number of evaluation counter.
 	 * @return The wake free ratio per turbine
 	 */
-	public abstract double[] getTurbineFitnesses();
+	public double[] getTurbineFitnesses() {
+		LastEvaluation last = lastEvaluation;
+		return last == null ? null : last.withOutputs().getTurbineFitnesses();
+	}
 
 	/**
 	 * Returns the global energy output of the last layout evaluated.
@@ -48,7 +331,10 @@ public abstract class WindFarmLayoutEvaluator {
 	 * This method doesn't increase the number of evaluation counter. 
 	 * @return The global energy output
 	 */
-	public abstract double getEnergyOutput();
+	public double getEnergyOutput() {
+		LastEvaluation last = lastEvaluation;
+		return last == null ? 0 : last.getResult().getEnergyOutput();
+	}
 
 	/**
 	 * Returns the global wake free ratio of the last layout evaluated.
@@ -56,7 +342,10 @@ public abstract class WindFarmLayoutEvaluator {
 	 * This method doesn't increase the number of evaluation counter. 
 	 * @return The global wake free ratio
 	 */
-	public abstract double getWakeFreeRatio();
+	public double getWakeFreeRatio() {
+		LastEvaluation last = lastEvaluation;
+		return last == null ? 0 : last.getResult().getWakeFreeRatio();
+	}
 
 	/**
 	 * Returns the energy cost of the last layout evaluated.
@@ -64,14 +353,17 @@ public abstract class WindFarmLayoutEvaluator {
 	 * This method doesn't increase the number of evaluation counter. 
 	 * @return The energy cost
 	 */
-	public abstract double getEnergyCost();
+	public double getEnergyCost() {
+		LastEvaluation last = lastEvaluation;
+		return last == null ? Double.MAX_VALUE : last.getResult().getEnergyCost();
+	}
 
 
 	/**
 	 * Returns the global number of time the evaluation function has been called.
 	 */
 	public static int getNumberOfEvaluation() {
-		return nEvals;
+		return (int) EvaluationBudget.getTotalEvaluations();
 	}
 
     /**
@@ -1,5 +1,6 @@
 package main;
 import java.io.File;
+import java.util.Arrays;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -35,18 +36,34 @@ public class WindScenario {
 
 	// Optimization parameters
     protected static double fac=Math.PI/180;
-    protected double coSinMidThetas[][];
+    protected double cosMidThetas[]; // per direction, cosine of the middle of the sector
+    protected double sinMidThetas[];
+    protected double sectorWidths[]; // per direction, width of the sector in degrees
     public double rkRatio;
     public double krRatio;
     public double vints[];
+    public double vintPowers[]; // power output at the middle of each wind speed bin
     protected double wblcdfValues[];
+    protected double shapes[]; // the distinct shape factors of ks, one column of wblcdfValues each
+    protected int shapeIndex[]; // per direction, the index of its shape factor in shapes
     protected double wblcdfAccuracy;
     protected double cMax, cMin;
     public double atan_k;
     public double trans_CT;
     public double minDist;
+    protected int speedStep=1; // number of 0.5 m/s wind speed bins merged in one bin of vints
+    protected double wakeFreeRatioErrorBound; // bound of the wake free ratio error against the full scenario
 
-    WindScenario(String xmlFileName) throws Exception {
+    // default step of the scale factor in the Weibull CDF table
+    public static final double DEFAULT_WBLCDF_ACCURACY = 0.01;
+    // default number of deficit steps in the energy response tables
+    public static final int DEFAULT_RESPONSE_RESOLUTION = 4000;
+
+    protected double energyTable[]; // rows of energy per deficit, one row per direction
+    protected double deficitStep;
+    protected int deficitSteps;
+
+    public WindScenario(String xmlFileName) throws Exception {
     	File fXmlFile = new File(xmlFileName);
     	DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
     	DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
@@ -54,25 +71,31 @@ public class WindScenario {
 
     	doc.getDocumentElement().normalize();
 
-        c=new double[24];
-        ks=new double[24];
-        omegas=new double[24];
-        thetas=new double[24][2];
-
-        for (int i=0; i<24; i++) {
-            thetas[i][0]=i*15.0;
-            thetas[i][1]=(i+1)*15.0;
-        }
     	NodeList angleList = doc.getElementsByTagName("angle");
-    	for (int i=0; i<angleList.getLength(); i++) {
-    		Node angle=angleList.item(i);
-    		if (angle.getNodeType()==Node.ELEMENT_NODE) {
-    			Element eAngle=(Element)angle;
-    			c[i]=Double.parseDouble(eAngle.getAttribute("c"));
-    			ks[i]=Double.parseDouble(eAngle.getAttribute("k"));
-    			omegas[i]=Double.parseDouble(eAngle.getAttribute("omega"));
-    		}
+    	int directions=angleList.getLength();
+    	if (directions==0) {
+    		throw new IllegalArgumentException("No angle in "+xmlFileName);
+    	}
+        c=new double[directions];
+        ks=new double[directions];
+        omegas=new double[directions];
+        thetas=new double[directions][2];
+    	for (int i=0; i<directions; i++) {
+    		Element eAngle=(Element)angleList.item(i);
+    		c[i]=Double.parseDouble(eAngle.getAttribute("c"));
+    		ks[i]=Double.parseDouble(eAngle.getAttribute("k"));
+    		omegas[i]=Double.parseDouble(eAngle.getAttribute("omega"));
+    		// without a theta attribute the sectors are evenly spread from 0
+    		String theta=eAngle.getAttribute("theta");
+    		thetas[i][0]=theta.isEmpty() ? i*360.0/directions : Double.parseDouble(theta);
     	}
+        // each sector ends where the next one starts, the last one where the first one starts plus 360
+        for (int i=0; i<directions; i++) {
+            thetas[i][1]=i+1<directions ? thetas[i+1][0] : thetas[0][0]+360.0;
+            if (!(thetas[i][1]>thetas[i][0])) {
+                throw new IllegalArgumentException("The angles of "+xmlFileName+" must increase within 360 degrees");
+            }
+        }
 
     	NodeList obstacleList = doc.getElementsByTagName("obstacle");
     	obstacles=new double[obstacleList.getLength()][4];
@@ -107,39 +130,363 @@ public class WindScenario {
     }
 
     void initOptimizationParameters() {
-        coSinMidThetas=new double[thetas.length][2];
+        cosMidThetas=new double[thetas.length];
+        sinMidThetas=new double[thetas.length];
+        sectorWidths=new double[thetas.length];
         for (int thets=0; thets<thetas.length; thets++) {
             double theta=(thetas[thets][0]+thetas[thets][1])/2.0*fac;
-            coSinMidThetas[thets][0]=Math.cos(theta);
-            coSinMidThetas[thets][1]=Math.sin(theta);
+            cosMidThetas[thets]=Math.cos(theta);
+            sinMidThetas[thets]=Math.sin(theta);
+            sectorWidths[thets]=thetas[thets][1]-thetas[thets][0];
         }
+        initShapes();
         rkRatio=R/k;
         krRatio=k/R;
-        vints=new double[(int)(2.0*vRated-7.0+1.0)];
-        for (int i=0; i<vints.length; i++) {
-          vints[i]=3.5+(double)i*0.5;
+        int speeds=(int)(2.0*vRated-7.0+1.0);
+        vints=new double[(speeds-2)/speedStep+2];
+        for (int i=0; i<vints.length-1; i++) {
+          vints[i]=3.5+(double)(i*speedStep)*0.5;
+        }
+        // the last bin ends at vRated whatever the merging
+        vints[vints.length-1]=3.5+(double)(speeds-1)*0.5;
+        vintPowers=new double[vints.length];
+        for (int i=1; i<vints.length; i++) {
+          vintPowers[i]=powOutput((vints[i]+vints[i-1])/2.0);
         }
         atan_k=Math.atan(k);
         trans_CT=1.0-Math.sqrt(1.0-CT);
         minDist=64.0*R*R;
+        initWblcdfTable(DEFAULT_WBLCDF_ACCURACY);
+        initEnergyTable(DEFAULT_RESPONSE_RESOLUTION);
+    }
+
+    /**
+     * Returns a lower fidelity copy of the scenario for screening layouts. The directions whose omega is below
+     * minOmega are dropped, and the weights of the others are scaled so that the wake free energy of a
+     * turbine stays the same; every speedStep wind speed bins are merged into one. The farm is unchanged.
+     * The wake free ratio computed with the copy differs from the full one by at most
+     * getWakeFreeRatioErrorBound(): the dropped share of the wake free energy, whose wake free ratio lies in
+     * [0, 1], plus, for the merged bins, the power curve slope lambda times half the width added to the bins,
+     * on the probability of the wind speeds below vRated.
+     * @param minOmega The smallest weight of the kept directions, the heaviest direction is always kept
+     * @param speedStep The number of wind speed bins merged, 1 to keep them all
+     */
+    public WindScenario reduce(double minOmega, int speedStep) {
+        if (speedStep<1) {
+            throw new IllegalArgumentException("Speed step must be positive: "+speedStep);
+        }
+        int heaviest=0;
+        int kept=0;
+        for (int thets=0; thets<omegas.length; thets++) {
+            if (omegas[thets]>omegas[heaviest]) {
+                heaviest=thets;
+            }
+            if (omegas[thets]>=minOmega) {
+                kept++;
+            }
+        }
+
+        WindScenario reduced=new WindScenario(this);
+        reduced.speedStep=speedStep;
+        reduced.c=new double[Math.max(1, kept)];
+        reduced.ks=new double[reduced.c.length];
+        reduced.omegas=new double[reduced.c.length];
+        reduced.thetas=new double[reduced.c.length][];
+        double fullEnergy=0;
+        double keptEnergy=0;
+        double keptWeight=0; // sum of tint*omega of the kept directions
+        int r=0;
+        for (int thets=0; thets<omegas.length; thets++) {
+            double energy=getDirectionEnergy(c[thets], thets);
+            fullEnergy+=energy;
+            if (omegas[thets]>=minOmega || (kept==0 && thets==heaviest)) {
+                keptEnergy+=energy;
+                keptWeight+=(thetas[thets][1]-thetas[thets][0])*omegas[thets];
+                reduced.c[r]=c[thets];
+                reduced.ks[r]=ks[thets];
+                reduced.omegas[r]=omegas[thets];
+                reduced.thetas[r]=thetas[thets].clone();
+                r++;
+            }
+        }
+        double scale=keptEnergy>0 ? fullEnergy/keptEnergy : 1.0;
+        for (int thets=0; thets<reduced.omegas.length; thets++) {
+            reduced.omegas[thets]*=scale;
+        }
+        reduced.initOptimizationParameters();
+
+        // both bounds are relative to the computed wake free energy, the wake free ratio uses wakeFreeEnergy
+        double dropBound=fullEnergy>0 ? (fullEnergy-keptEnergy)/fullEnergy : 0;
+        double maxWidth=0;
+        for (int i=1; i<reduced.vints.length; i++) {
+            maxWidth=Math.max(maxWidth, reduced.vints[i]-reduced.vints[i-1]);
+        }
+        double speedBound=fullEnergy>0 ? lambda*(maxWidth-0.5)/2.0*keptWeight*scale/fullEnergy : 0;
+        reduced.wakeFreeRatioErrorBound=(dropBound+speedBound)*fullEnergy/wakeFreeEnergy;
+        return reduced;
+    }
+
+    /**
+     * Returns a copy of the scenario restricted to the given directions, in that order, whose wake free energy
+     * per turbine is wakeFreeEnergy. The wakes are computed in the kept directions only, e.g. the ones a
+     * WindTimeSeries has records in.
+     * @param directions The indices of the kept directions
+     * @param wakeFreeEnergy The wake free energy of the copy
+     */
+    WindScenario restrict(int directions[], double wakeFreeEnergy) {
+        WindScenario restricted=new WindScenario(this);
+        restricted.c=new double[directions.length];
+        restricted.ks=new double[directions.length];
+        restricted.omegas=new double[directions.length];
+        restricted.thetas=new double[directions.length][];
+        for (int r=0; r<directions.length; r++) {
+            restricted.c[r]=c[directions[r]];
+            restricted.ks[r]=ks[directions[r]];
+            restricted.omegas[r]=omegas[directions[r]];
+            restricted.thetas[r]=thetas[directions[r]].clone();
+        }
+        restricted.wakeFreeEnergy=wakeFreeEnergy;
+        restricted.initOptimizationParameters();
+        return restricted;
+    }
+
+    /**
+     * Returns a copy of the scenario whose farm is the given one, with the same wind resource and obstacles,
+     * e.g. the farm a layout valid on several scenarios lies in.
+     * @param width The width of the farm of the copy
+     * @param height The height of the farm of the copy
+     */
+    WindScenario crop(double width, double height) {
+        WindScenario cropped=new WindScenario(this);
+        cropped.width=width;
+        cropped.height=height;
+        cropped.initOptimizationParameters();
+        return cropped;
+    }
+
+    /**
+     * Returns the bound of the difference between the wake free ratio of any layout computed with this
+     * scenario and with the scenario it was reduced from, 0 for a full scenario.
+     */
+    public double getWakeFreeRatioErrorBound() {
+        return wakeFreeRatioErrorBound;
+    }
+
+    /**
+     * Copies the farm and wind resource of another scenario, the optimization parameters are not initialized.
+     */
+    private WindScenario(WindScenario other) {
+        ks=other.ks;
+        c=other.c;
+        omegas=other.omegas;
+        thetas=other.thetas;
+        CT=other.CT;
+        farmRadius=other.farmRadius;
+        PRated=other.PRated;
+        R=other.R;
+        eta=other.eta;
+        k=other.k;
+        lambda=other.lambda;
+        vCin=other.vCin;
+        vCout=other.vCout;
+        vRated=other.vRated;
+        width=other.width;
+        height=other.height;
+        nturbines=other.nturbines;
+        wakeFreeEnergy=other.wakeFreeEnergy;
+        obstacles=other.obstacles;
+    }
+
+    /**
+     * Tabulates, for every direction, the annual energy of a turbine as a function of its velocity deficit,
+     * for deficits from 0 to 1 in the given number of steps. The energy decreases with the deficit, and the
+     * linear interpolation between the tabulated values keeps it monotone. The power curve is integrated once
+     * per distinct pair of Weibull factors, the directions sharing them only differ by their weight, which
+     * keeps fine wind roses cheap to tabulate.
+     * @param resolution The number of steps between a deficit of 0 and a deficit of 1
+     */
+    public void initEnergyTable(int resolution) {
+        deficitSteps=resolution;
+        deficitStep=1.0/resolution;
+        energyTable=new double[thetas.length*(resolution+1)];
+        double power[][]=new double[thetas.length][]; // power per deficit, by the first direction of each pair
+        for (int thets=0; thets<thetas.length; thets++) {
+            int first=0;
+            while (c[first]!=c[thets] || ks[first]!=ks[thets]) {
+                first++;
+            }
+            if (first==thets) {
+                power[thets]=new double[resolution+1];
+                for (int s=0; s<=resolution; s++) {
+                    double vdef=Math.min(1.0, s*deficitStep);
+                    power[thets][s]=getDirectionPower(c[thets]*(1.0-vdef), ks[thets]);
+                }
+            }
+            double weight=sectorWidths[thets]*omegas[thets];
+            for (int s=0; s<=resolution; s++) {
+                energyTable[thets*(resolution+1)+s]=power[first][s]*weight;
+            }
+        }
+    }
+
+    public double getDeficitStep() {
+        return deficitStep;
+    }
+
+    /**
+     * Tabulates wblcdf at every wind speed of vints and at vRated, for every distinct shape factor,
+     * over the scale factors from cMin to cMax in steps of accuracy. The scale factor seen by a turbine is
+     * c*(1-deficit) with a non negative deficit, so [0, max(c)] covers every reachable value. The table is
+     * laid out as expected by getWblcdfVints and getWblcdfVrated, with one extra row so that the value at
+     * cMax can be interpolated.
+     * @param accuracy The step between two tabulated scale factors
+     */
+    public void initWblcdfTable(double accuracy) {
+        wblcdfAccuracy=accuracy;
+        cMin=0.0;
+        cMax=0.0;
+        for (int i=0; i<c.length; i++) {
+            cMax=Math.max(cMax, c[i]);
+        }
+        int steps=(int)Math.ceil((cMax-cMin)/accuracy)+2;
+        int row=(vints.length+1)*shapes.length;
+        wblcdfValues=new double[steps*row];
+        for (int s=0; s<steps; s++) {
+            double sc=cMin+s*accuracy;
+            for (int v=0; v<=vints.length; v++) {
+                double x=v<vints.length?vints[v]:vRated;
+                for (int shape=0; shape<shapes.length; shape++) {
+                    wblcdfValues[s*row+v*shapes.length+shape]=wblcdf(x, sc, shapes[shape]);
+                }
+            }
+        }
+    }
+
+    public double getWblcdfAccuracy() {
+        return wblcdfAccuracy;
+    }
+
+    /**
+     * Returns true if the scale factor c lies inside the tabulated range.
+     */
+    boolean isInWblcdfTable(double c) {
+        return c>=cMin && c<=cMax;
     }
 
     double getCosMidThetas(int thetIndex) {
-    	return coSinMidThetas[thetIndex][0];
+    	return cosMidThetas[thetIndex];
     }
     
     double getSinMidThetas(int thetIndex) {
-    	return coSinMidThetas[thetIndex][1];
+    	return sinMidThetas[thetIndex];
+    }
+
+    /**
+     * Returns the width in degrees of the sector of the direction thetIndex.
+     */
+    public double getSectorWidth(int thetIndex) {
+        return sectorWidths[thetIndex];
+    }
+
+    /**
+     * Lists the distinct shape factors of the directions, usually a handful whatever the number of sectors,
+     * so that the wblcdf table grows with them rather than with the directions.
+     */
+    private void initShapes() {
+        shapeIndex=new int[ks.length];
+        double distinct[]=new double[ks.length];
+        int count=0;
+        for (int thets=0; thets<ks.length; thets++) {
+            int index=0;
+            while (index<count && distinct[index]!=ks[thets]) {
+                index++;
+            }
+            if (index==count) {
+                distinct[count++]=ks[thets];
+            }
+            shapeIndex[thets]=index;
+        }
+        shapes=Arrays.copyOf(distinct, count);
     }
 
     
-	double getWblcdfVints(double c, int vintIndex, int ksIndex) {
-		return wblcdfValues[(int)((c-cMin)/wblcdfAccuracy)*(vints.length+1)*ks.length+vintIndex*ks.length+ksIndex];
+	double getWblcdfVints(double c, int vintIndex, int thetIndex) {
+		return wblcdfValues[(int)((c-cMin)/wblcdfAccuracy)*(vints.length+1)*shapes.length+vintIndex*shapes.length+shapeIndex[thetIndex]];
 	}
 
-	double getWblcdfVrated(double c, int ksIndex) {
-		return wblcdfValues[(int)((c-cMin)/wblcdfAccuracy)*(vints.length+1)*ks.length+vints.length*ks.length+ksIndex];
+	double getWblcdfVrated(double c, int thetIndex) {
+		return getWblcdfVints(c, vints.length, thetIndex);
+	}
+
+	/**
+	 * Linear interpolation of the tabulated wblcdf at vints[vintIndex] between the two scale factors
+	 * surrounding c, for the shape factor of the direction thetIndex. c must be inside the table (see
+	 * isInWblcdfTable).
+	 */
+	double getWblcdfVintsInterpolated(double c, int vintIndex, int thetIndex) {
+		double pos=(c-cMin)/wblcdfAccuracy;
+		int s=(int)pos;
+		double frac=pos-s;
+		int row=(vints.length+1)*shapes.length;
+		int index=s*row+vintIndex*shapes.length+shapeIndex[thetIndex];
+		return wblcdfValues[index]+frac*(wblcdfValues[index+row]-wblcdfValues[index]);
+	}
+
+	/**
+	 * Linear interpolation of the tabulated wblcdf at vRated between the two scale factors surrounding c.
+	 */
+	double getWblcdfVratedInterpolated(double c, int thetIndex) {
+		return getWblcdfVintsInterpolated(c, vints.length, thetIndex);
+	}
+
+	/**
+	 * Annual energy output of one turbine in the direction thetIndex, for the Weibull scale factor cTurb it
+	 * sees: the power curve integrated over the wind speed bins of vints plus the rated power above vRated.
+	 */
+	public double getDirectionEnergy(double cTurb, int thetIndex) {
+		double tint=sectorWidths[thetIndex];
+		double w=omegas[thetIndex];
+		return getDirectionPower(cTurb, ks[thetIndex])*(tint*w);
+	}
 
+	/**
+	 * Expected power output of one turbine for the Weibull scale factor cTurb and shape factor ki, before the
+	 * weighting of getDirectionEnergy by the direction.
+	 */
+	private double getDirectionPower(double cTurb, double ki) {
+		double totalPow=0;
+		for (int ghh=1; ghh<vints.length; ghh++) {
+			double prV=wblcdf(vints[ghh], cTurb, ki)-wblcdf(vints[ghh-1], cTurb, ki);
+			totalPow+=prV*vintPowers[ghh];
+		}
+		totalPow+=PRated*(1.0-wblcdf(vRated, cTurb, ki));
+		return totalPow;
+	}
+
+	/**
+	 * Annual energy output of one turbine in the direction thetIndex for the velocity deficit vdef, linearly
+	 * interpolated in the response table. Deficits outside [0, 1] are computed exactly.
+	 */
+	public double getDirectionEnergyInterpolated(double vdef, int thetIndex) {
+		double pos=vdef/deficitStep;
+		if (!(pos>=0.0 && pos<deficitSteps)) {
+			return getDirectionEnergy(c[thetIndex]*(1.0-vdef), thetIndex);
+		}
+		int s=(int)pos;
+		int index=thetIndex*(deficitSteps+1)+s;
+		return energyTable[index]+(pos-s)*(energyTable[index+1]-energyTable[index]);
+	}
+
+	public double powOutput(double v) {
+		if (v<vCin) {
+			return 0;
+		} else if (v>=vCin && v<=vRated) {
+			return lambda*v+eta;
+		} else if (vCout>v && v>vRated) {
+			return PRated;
+		} else {
+			return 0;
+		}
 	}
 
 	static public double wblcdf(double x, double sc, double sh) {
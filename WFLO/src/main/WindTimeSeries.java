@@ -0,0 +1,301 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A wind resource given by records of (speed, direction), e.g. years of hourly measurements, instead of the
+ * Weibull distributions of a WindScenario. The records are binned on the fly into the sectors of a scenario,
+ * which also provides the turbines and the farm, and into speed bins of SPEED_STEP m/s, whose count and sum
+ * of speeds are kept; the memory used only depends on the numbers of sectors and speed bins, however many
+ * records are read. The power curve is linear between its corners, so the power of the records of a bin is
+ * the power of their mean speed, up to the bins straddling a corner.
+ *
+ * The files are read through windows of WINDOW bytes mapped in memory. A CSV file has one record per line,
+ * with fields separated by commas, semicolons, tabs or spaces; the lines whose speed or direction cannot be
+ * parsed, such as a header, are skipped. A binary file is a sequence of records of two little endian floats,
+ * the speed and the direction. Directions are in degrees, like the thetas of the scenario, and records with
+ * a negative, infinite or missing speed or an infinite or missing direction are skipped.
+ */
+public class WindTimeSeries {
+
+	public static final double SPEED_STEP = 0.1; // width of the speed bins, in m/s
+	public static final double MAX_SPEED = 50; // the speeds above fall into the last bin
+	public static final int WINDOW = 1 << 26; // bytes of a file mapped at once
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	final WindScenario scenario;
+	final int bins; // speed bins per direction
+	final long[] counts; // records per direction and speed bin, at direction * bins + bin
+	final double[] speedSums; // sum of the speeds of the records of each bin, same layout
+	private final double[] sectorStarts; // start of each sector, increasing
+	private long records;
+	private long skipped;
+
+	/**
+	 * Creates an empty series binned into the sectors of the scenario.
+	 */
+	public WindTimeSeries(WindScenario scenario) {
+		this.scenario = scenario;
+		bins = (int) Math.ceil(MAX_SPEED / SPEED_STEP);
+		counts = new long[scenario.thetas.length * bins];
+		speedSums = new double[counts.length];
+		sectorStarts = new double[scenario.thetas.length];
+		for (int thets = 0; thets < sectorStarts.length; thets++) {
+			sectorStarts[thets] = scenario.thetas[thets][0];
+		}
+	}
+
+	public WindScenario getScenario() {
+		return scenario;
+	}
+
+	/**
+	 * Returns the number of records binned so far.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the number of records skipped so far because their speed or direction was missing or invalid.
+	 */
+	public long getSkippedRecords() {
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of records binned in the direction thetIndex.
+	 */
+	public long getRecords(int thetIndex) {
+		long count = 0;
+		for (int bin = 0; bin < bins; bin++) {
+			count += counts[thetIndex * bins + bin];
+		}
+		return count;
+	}
+
+	/**
+	 * Forgets all the records, keeping the buffers.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(speedSums, 0);
+		records = 0;
+		skipped = 0;
+	}
+
+	/**
+	 * Bins one record, or counts it as skipped if its speed or direction is invalid.
+	 */
+	public void add(double speed, double direction) {
+		if (!(speed >= 0) || Double.isInfinite(speed) || Double.isNaN(direction) || Double.isInfinite(direction)) {
+			skipped++;
+			return;
+		}
+		int index = sectorOf(direction) * bins + Math.min((int) (speed / SPEED_STEP), bins - 1);
+		counts[index]++;
+		speedSums[index] += speed;
+		records++;
+	}
+
+	/**
+	 * Returns the sector containing the direction, taken modulo 360 degrees.
+	 */
+	int sectorOf(double direction) {
+		double first = sectorStarts[0];
+		double offset = direction - first;
+		offset -= 360.0 * Math.floor(offset / 360.0);
+		double angle = first + offset;
+		int low = 0;
+		int high = sectorStarts.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (sectorStarts[mid] <= angle) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads a CSV file whose first field is the speed and second field the direction.
+	 */
+	public void readCsv(String fileName) throws IOException {
+		readCsv(fileName, 0, 1);
+	}
+
+	/**
+	 * Reads a CSV file, taking the speed and the direction from the given fields, counted from 0.
+	 */
+	public void readCsv(String fileName, int speedField, int directionField) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				int length = (int) Math.min(WINDOW, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				boolean last = position + length == size;
+				// only the complete lines of the window are read, the next window starts after them
+				int end = length;
+				if (!last) {
+					while (end > 0 && buffer.get(end - 1) != '\n') {
+						end--;
+					}
+					if (end == 0) {
+						throw new IOException("Line longer than " + WINDOW + " bytes at " + position + " in " + fileName);
+					}
+				}
+				int lineStart = 0;
+				while (lineStart < end) {
+					int lineEnd = lineStart;
+					while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+						lineEnd++;
+					}
+					readCsvLine(buffer, lineStart, lineEnd, speedField, directionField);
+					lineStart = lineEnd + 1;
+				}
+				position += end;
+			}
+		}
+	}
+
+	private void readCsvLine(MappedByteBuffer buffer, int from, int to, int speedField, int directionField) {
+		if (to > from && buffer.get(to - 1) == '\r') {
+			to--;
+		}
+		if (to == from) {
+			return; // blank line
+		}
+		// the fields are separated by commas, semicolons or tabs, or else by runs of spaces
+		boolean spaces = true;
+		for (int p = from; p < to && spaces; p++) {
+			byte b = buffer.get(p);
+			spaces = b != ',' && b != ';' && b != '\t';
+		}
+		double speed = Double.NaN;
+		double direction = Double.NaN;
+		int field = 0;
+		int p = from;
+		while (spaces && p < to && buffer.get(p) == ' ') {
+			p++;
+		}
+		int fieldStart = p;
+		for (; p <= to; p++) {
+			byte b = p < to ? buffer.get(p) : (byte) '\n';
+			if (b == '\n' || (spaces ? b == ' ' : b == ',' || b == ';' || b == '\t')) {
+				if (field == speedField) {
+					speed = parseNumber(buffer, fieldStart, p);
+				} else if (field == directionField) {
+					direction = parseNumber(buffer, fieldStart, p);
+				}
+				field++;
+				while (spaces && p + 1 < to && buffer.get(p + 1) == ' ') {
+					p++;
+				}
+				fieldStart = p + 1;
+			}
+		}
+		add(speed, direction);
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/**
+	 * Parses the decimal number of buffer[from, to), NaN if it is not one. Numbers of at most 15 significant
+	 * digits without exponent, the usual case, are parsed without allocating and rounded like
+	 * Double.parseDouble: the digits and the power of ten are both exact doubles. The others go through
+	 * Double.parseDouble.
+	 */
+	static double parseNumber(ByteBuffer buffer, int from, int to) {
+		while (from < to && (isBlank(buffer.get(from)) || buffer.get(from) == '"')) {
+			from++;
+		}
+		while (to > from && (isBlank(buffer.get(to - 1)) || buffer.get(to - 1) == '"')) {
+			to--;
+		}
+		int p = from;
+		boolean negative = false;
+		if (p < to && (buffer.get(p) == '-' || buffer.get(p) == '+')) {
+			negative = buffer.get(p) == '-';
+			p++;
+		}
+		long mantissa = 0;
+		boolean anyDigit = false;
+		int digits = 0;
+		int decimals = 0;
+		boolean point = false;
+		boolean simple = true;
+		for (; p < to; p++) {
+			byte b = buffer.get(p);
+			if (b >= '0' && b <= '9') {
+				anyDigit = true;
+				if (mantissa != 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) {
+					decimals++;
+				}
+				if (digits > 15 || decimals >= POWERS_OF_TEN.length) {
+					simple = false;
+					break;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				simple = false;
+				break;
+			}
+		}
+		if (simple) {
+			if (!anyDigit) {
+				return Double.NaN;
+			}
+			double value = mantissa / POWERS_OF_TEN[decimals];
+			return negative ? -value : value;
+		}
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		try {
+			return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Reads a binary file of records of two little endian floats, the speed and the direction.
+	 */
+	public void readBinary(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size() / 8 * 8;
+			long position = 0;
+			while (position < size) {
+				int length = (int) Math.min(WINDOW, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				for (int p = 0; p < length; p += 8) {
+					add(buffer.getFloat(p), buffer.getFloat(p + 4));
+				}
+				position += length;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package sample;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Counts the bytes allocated by the flat evaluation path of KusiakLayoutEvaluator once it is warmed up. Run from
+ * the project directory, e.g. with the scenario name as first argument (default competition_3).
+ */
+public class AllocationTest {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int evaluations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+		KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+		wfle.initialize(ws);
+
+		// Half of the points of a regular grid with 8.001R spacing, always a valid layout.
+		int n = 0;
+		double[] xs = new double[ws.nturbines];
+		double[] ys = new double[ws.nturbines];
+		Random random = new Random(1);
+		for (double[] site : Layouts.gridSites(wfle)) {
+			if (n < xs.length && random.nextDouble() < 0.5) {
+				xs[n] = site[0];
+				ys[n] = site[1];
+				n++;
+			}
+		}
+
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		// Warm up, so that the buffers are sized for the layout.
+		double coe = wfle.evaluate(xs, ys, n);
+
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < evaluations; i++) {
+			coe = wfle.evaluate(xs, ys, n);
+		}
+		long after = bean.getThreadAllocatedBytes(thread);
+
+		System.out.println("Scenario:" + scenario + ", Turbines:" + n + ", CoE:" + coe);
+		System.out.println("Bytes allocated per evaluation:" + (after - before) / evaluations);
+	}
+
+}
@@ -0,0 +1,50 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Compares the trig-free wake cone test of KusiakLayoutEvaluator with the acos of calculateBeta on ks1 and
+ * competition_3, with the wake sweep and with the pairwise loop, and checks that both tests give the same cost
+ * of energy, bit for bit.
+ */
+public class ConeTestBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String[] scenarios = { "ks1", "competition_3" };
+		int[] sizes = { 100, 710 };
+		int runs = 10;
+		Random random = new Random(1);
+
+		for (String scenario : scenarios) {
+			for (int n : sizes) {
+				WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+				Layouts.enlargeFarm(ws, n);
+				KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+				wfle.initialize(ws);
+				double[][] layout = Layouts.jitteredGrid(ws, n, random);
+
+				for (int sweep = 0; sweep < 2; sweep++) {
+					wfle.setWakeSweep(sweep == 0);
+					double[] coe = new double[2];
+					double[] time = new double[2];
+					for (int trigFree = 0; trigFree < 2; trigFree++) {
+						wfle.setTrigFreeCone(trigFree == 1);
+						wfle.evaluate(layout);
+						long start = System.nanoTime();
+						for (int r = 0; r < runs; r++) {
+							coe[trigFree] = wfle.evaluate(layout);
+						}
+						time[trigFree] = (System.nanoTime() - start) / 1e6 / runs;
+					}
+					System.out.println(scenario + ", Turbines:" + n + ", " + (sweep == 0 ? "Sweep" : "Pairwise")
+							+ ", Same CoE:" + (coe[0] == coe[1]) + ", Acos:" + String.format("%.2f", time[0])
+							+ "ms, Trig-free:" + String.format("%.2f", time[1]) + "ms");
+				}
+			}
+		}
+	}
+
+}
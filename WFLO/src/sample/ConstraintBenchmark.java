@@ -0,0 +1,91 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Compares the grid based KusiakLayoutEvaluator.checkConstraint with the former pairwise check on layouts of
+ * 100, 710 and 5000 turbines, and verifies that both give the same answer on valid and on invalid layouts. The
+ * farm of the scenario is enlarged when it cannot hold the requested number of turbines.
+ */
+public class ConstraintBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int[] sizes = { 100, 710, 5000 };
+		Random random = new Random(1);
+
+		for (int n : sizes) {
+			WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+			Layouts.enlargeFarm(ws, n);
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+
+			double[][] layout = Layouts.jitteredGrid(ws, n, random);
+			int repeats = Math.max(5, 20000000 / (n * n));
+
+			// valid layout, then the same layout with two turbines pushed too close to each other
+			for (int variant = 0; variant < 2; variant++) {
+				if (variant == 1) {
+					int i = random.nextInt(n);
+					int j = random.nextInt(n - 1);
+					j = j >= i ? j + 1 : j;
+					layout[j][0] = Math.min(ws.width, layout[i][0] + 0.999 * Math.sqrt(ws.minDist));
+					layout[j][1] = layout[i][1];
+				}
+
+				// warm up both checks before timing them
+				for (int r = 0; r < repeats; r++) {
+					wfle.checkConstraint(layout);
+					checkPairwise(ws, layout);
+				}
+
+				boolean grid = false;
+				long start = System.nanoTime();
+				for (int r = 0; r < repeats; r++) {
+					grid = wfle.checkConstraint(layout);
+				}
+				double gridTime = (System.nanoTime() - start) / 1e3 / repeats;
+
+				boolean pairwise = false;
+				start = System.nanoTime();
+				for (int r = 0; r < repeats; r++) {
+					pairwise = checkPairwise(ws, layout);
+				}
+				double pairwiseTime = (System.nanoTime() - start) / 1e3 / repeats;
+
+				System.out.println("Turbines:" + n + ", Valid:" + pairwise + ", Same answer:" + (grid == pairwise)
+						+ ", Grid:" + String.format("%.1f", gridTime) + "us, Pairwise:"
+						+ String.format("%.1f", pairwiseTime) + "us");
+			}
+		}
+	}
+
+	private static boolean checkPairwise(WindScenario ws, double[][] layout) {
+		for (int i = 0; i < layout.length; i++) {
+			if (layout[i][0] != layout[i][0] || layout[i][1] != layout[i][1] || layout[i][0] < 0.0
+					|| layout[i][1] < 0.0 || layout[i][0] > ws.width || layout[i][1] > ws.height) {
+				return false;
+			}
+			for (int j = 0; j < ws.obstacles.length; j++) {
+				if (layout[i][0] > ws.obstacles[j][0] && layout[i][0] < ws.obstacles[j][2]
+						&& layout[i][1] > ws.obstacles[j][1] && layout[i][1] < ws.obstacles[j][3]) {
+					return false;
+				}
+			}
+			for (int j = 0; j < layout.length; j++) {
+				if (i != j) {
+					double dist = (layout[i][0] - layout[j][0]) * (layout[i][0] - layout[j][0])
+							+ (layout[i][1] - layout[j][1]) * (layout[i][1] - layout[j][1]);
+					if (dist < ws.minDist) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+}
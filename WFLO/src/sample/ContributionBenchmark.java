@@ -0,0 +1,53 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Compares the marginal contributions of KusiakLayoutEvaluator.calculateContributions with the ones given by
+ * evaluating the layout without each turbine in turn, on random valid layouts, and times both. The difference
+ * is printed relative to the energy output of the layout.
+ */
+public class ContributionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int[] sizes = { 50, 200, 710 };
+		Random random = new Random(1);
+
+		for (int n : sizes) {
+			WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+			Layouts.enlargeFarm(ws, n);
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+			double[][] layout = Layouts.jitteredGrid(ws, n, random);
+
+			wfle.calculateContributions(layout);
+			long start = System.nanoTime();
+			double[] contributions = wfle.calculateContributions(layout);
+			double onePassTime = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			double energy = wfle.evaluateResult(layout, false).getEnergyOutput();
+			double maxDifference = 0;
+			double[][] without = new double[n - 1][];
+			for (int removed = 0; removed < n; removed++) {
+				for (int turb = 0, next = 0; turb < n; turb++) {
+					if (turb != removed) {
+						without[next++] = layout[turb];
+					}
+				}
+				double contribution = energy - wfle.evaluateResult(without, false).getEnergyOutput();
+				maxDifference = Math.max(maxDifference, Math.abs(contributions[removed] - contribution));
+			}
+			double evaluationsTime = (System.nanoTime() - start) / 1e6;
+
+			System.out.println("Turbines:" + n + ", Max difference:" + String.format("%.2e", maxDifference / energy)
+					+ ", One pass:" + String.format("%.1f", onePassTime) + "ms, " + n + " evaluations:"
+					+ String.format("%.1f", evaluationsTime) + "ms");
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Compares the deficit table of KusiakLayoutEvaluator with the analytic kernel on ks1 and competition_3, with
+ * the wake sweep and with the pairwise loop: time per evaluation and relative error of the cost of energy over
+ * a few random layouts, for several resolutions of the table.
+ */
+public class DeficitTableBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String[] scenarios = { "ks1", "competition_3" };
+		int[] sizes = { 100, 710 };
+		int[] resolutions = { 2, 8, 32 };
+		int layouts = 5;
+		int runs = 5;
+		Random random = new Random(1);
+
+		for (String scenario : scenarios) {
+			for (int n : sizes) {
+				WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+				Layouts.enlargeFarm(ws, n);
+				KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+				wfle.initialize(ws);
+				double[][][] samples = new double[layouts][][];
+				for (int l = 0; l < layouts; l++) {
+					samples[l] = Layouts.jitteredGrid(ws, n, random);
+				}
+
+				for (int sweep = 0; sweep < 2; sweep++) {
+					wfle.setWakeSweep(sweep == 0);
+					wfle.setDeficitTable(0);
+					double[] exact = new double[layouts];
+					double exactTime = time(wfle, samples, exact, runs);
+					System.out.println(scenario + ", Turbines:" + n + ", " + (sweep == 0 ? "Sweep" : "Pairwise")
+							+ ", Analytic:" + String.format("%.2f", exactTime) + "ms");
+					for (int resolution : resolutions) {
+						wfle.setDeficitTable(resolution);
+						double[] coe = new double[layouts];
+						double tableTime = time(wfle, samples, coe, runs);
+						double error = 0;
+						for (int l = 0; l < layouts; l++) {
+							error = Math.max(error, Math.abs(coe[l] / exact[l] - 1));
+						}
+						System.out.println("  Resolution:" + resolution + ", Max CoE error:"
+								+ String.format("%.2e", error) + ", Table:" + String.format("%.2f", tableTime) + "ms");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evaluates every layout runs times after a warm up, keeps their cost of energy and returns the mean time of
+	 * an evaluation.
+	 */
+	private static double time(KusiakLayoutEvaluator wfle, double[][][] layouts, double[] coe, int runs) {
+		for (double[][] layout : layouts) {
+			wfle.evaluate(layout);
+		}
+		long start = System.nanoTime();
+		for (int r = 0; r < runs; r++) {
+			for (int l = 0; l < layouts.length; l++) {
+				coe[l] = wfle.evaluate(layouts[l]);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / runs / layouts.length;
+	}
+
+}
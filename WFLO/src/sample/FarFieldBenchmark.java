@@ -0,0 +1,52 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Reports the error and the speed of the far field approximation of KusiakLayoutEvaluator against the exact
+ * evaluation with the wake sweep, on layouts of 1000 to 10000 turbines in an enlarged farm, for several
+ * opening ratios.
+ */
+public class FarFieldBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int[] sizes = { 1000, 5000, 10000 };
+		double[] ratios = { 0.1, 0.3, 1 };
+		Random random = new Random(1);
+
+		for (int n : sizes) {
+			WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+			Layouts.enlargeFarm(ws, n);
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+			double[][] layout = Layouts.jitteredGrid(ws, n, random);
+
+			wfle.setFarField(0);
+			long start = System.nanoTime();
+			double exactCoE = wfle.evaluate(layout);
+			double exactTime = (System.nanoTime() - start) / 1e6;
+			double[] exactFitnesses = wfle.getTurbineFitnesses();
+			System.out.println("Turbines:" + n + ", Exact:" + String.format("%.0f", exactTime) + "ms");
+
+			for (double ratio : ratios) {
+				wfle.setFarField(ratio);
+				start = System.nanoTime();
+				double coe = wfle.evaluate(layout);
+				double time = (System.nanoTime() - start) / 1e6;
+				double[] fitnesses = wfle.getTurbineFitnesses();
+				double turbineError = 0;
+				for (int i = 0; i < n; i++) {
+					turbineError = Math.max(turbineError, Math.abs(fitnesses[i] - exactFitnesses[i]));
+				}
+				System.out.println("  Opening ratio:" + ratio + ", CoE error:"
+						+ String.format("%.2e", Math.abs(coe / exactCoE - 1)) + ", Max turbine wake free ratio error:"
+						+ String.format("%.2e", turbineError) + ", Far field:" + String.format("%.0f", time) + "ms");
+			}
+		}
+	}
+
+}
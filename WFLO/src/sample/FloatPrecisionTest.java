@@ -0,0 +1,83 @@
+package sample;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Measures how far the single precision evaluation of KusiakLayoutEvaluator is from the double precision one:
+ * random valid layouts of 10, 100 and 500 turbines are evaluated in both precisions on every scenario of the
+ * Scenarios directory, whose farm is enlarged to hold them, and the largest relative difference of the cost of
+ * energy is printed per scenario and over all of them. The mean time of an evaluation of the 500 turbine
+ * layouts is printed for both precisions, with the exact energy integration and with the response tables,
+ * where the deficits take most of the time.
+ */
+public class FloatPrecisionTest {
+
+	public static void main(String[] args) throws Exception {
+		String directory = args.length > 0 ? args[0] : "Scenarios";
+		int layouts = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int runs = 20;
+		int[] sizes = { 10, 100, 500 };
+		Random random = new Random(1);
+
+		File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".xml"));
+		Arrays.sort(files);
+		double maxDeviation = 0;
+		for (File file : files) {
+			WindScenario ws = new WindScenario(file.getPath());
+			Layouts.enlargeFarm(ws, sizes[sizes.length - 1]);
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+
+			double deviation = 0;
+			double[][][] largest = null;
+			for (int n : sizes) {
+				double[][][] samples = new double[layouts][][];
+				for (int l = 0; l < layouts; l++) {
+					samples[l] = Layouts.jitteredGrid(ws, n, random);
+				}
+				for (double[][] layout : samples) {
+					double exact = wfle.evaluateResult(layout, false, KusiakLayoutEvaluator._DOUBLE).getEnergyCost();
+					double fast = wfle.evaluateResult(layout, false, KusiakLayoutEvaluator._FLOAT).getEnergyCost();
+					deviation = Math.max(deviation, Math.abs(fast / exact - 1));
+				}
+				largest = samples;
+			}
+			maxDeviation = Math.max(maxDeviation, deviation);
+
+			StringBuilder line = new StringBuilder(
+					file.getName() + ", Max CoE deviation:" + String.format("%.2e", deviation));
+			for (String mode : new String[] { KusiakLayoutEvaluator._EXACT, KusiakLayoutEvaluator._RESPONSE_TABLE }) {
+				wfle.setEnergyMode(mode);
+				double doubleTime = time(wfle, largest, KusiakLayoutEvaluator._DOUBLE, runs);
+				double floatTime = time(wfle, largest, KusiakLayoutEvaluator._FLOAT, runs);
+				line.append(", " + mode + " double:" + String.format("%.2f", doubleTime) + "ms float:"
+						+ String.format("%.2f", floatTime) + "ms");
+			}
+			System.out.println(line);
+		}
+		System.out.println("Max CoE deviation over all scenarios:" + String.format("%.2e", maxDeviation));
+	}
+
+	/**
+	 * Evaluates every layout runs times in the given precision after a warm up and returns the mean time of an
+	 * evaluation.
+	 */
+	private static double time(KusiakLayoutEvaluator wfle, double[][][] layouts, String precision, int runs) {
+		for (double[][] layout : layouts) {
+			wfle.evaluateResult(layout, false, precision);
+		}
+		long start = System.nanoTime();
+		for (int r = 0; r < runs; r++) {
+			for (double[][] layout : layouts) {
+				wfle.evaluateResult(layout, false, precision);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / runs / layouts.length;
+	}
+
+}
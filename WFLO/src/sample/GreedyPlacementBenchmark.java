@@ -0,0 +1,54 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import main.GreedyPlacement;
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Builds a layout of the number of turbines of a scenario with GreedyPlacement, on sites 4R apart, and compares
+ * its cost of energy with the one of random valid layouts, the initial layouts of MuLambdaES. The gains of the
+ * final heatmap, read from the response tables, are checked on a sample of sites against the energy an extra
+ * turbine adds to the exact evaluation of the layout.
+ */
+public class GreedyPlacementBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int randomLayouts = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Random random = new Random(1);
+
+		WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+		KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+		wfle.initialize(ws);
+
+		long start = System.nanoTime();
+		GreedyPlacement placement = new GreedyPlacement(wfle, 4 * ws.R, 0, 0);
+		double[][] layout = placement.build(ws.nturbines);
+		double greedyTime = (System.nanoTime() - start) / 1e6;
+		double greedyCoE = wfle.evaluate(layout);
+
+		double randomCoE = Double.MAX_VALUE;
+		for (int l = 0; l < randomLayouts; l++) {
+			randomCoE = Math.min(randomCoE, wfle.evaluate(Layouts.randomLayout(wfle, ws.nturbines, random)));
+		}
+
+		double energy = wfle.evaluateResult(layout, false).getEnergyOutput();
+		double[][] heatmap = placement.getHeatmap();
+		double maxError = 0;
+		double[][] extended = Arrays.copyOf(layout, layout.length + 1);
+		for (int row = 0; row < heatmap.length; row += Math.max(1, heatmap.length / 20)) {
+			extended[layout.length] = new double[] { heatmap[row][0], heatmap[row][1] };
+			double gain = wfle.evaluateResult(extended, false).getEnergyOutput() - energy;
+			maxError = Math.max(maxError, Math.abs(heatmap[row][2] - gain) / Math.abs(gain));
+		}
+
+		System.out.println("Sites:" + placement.getSiteCount() + ", Turbines:" + layout.length + ", Greedy:"
+				+ String.format("%.0f", greedyTime) + "ms, Greedy CoE:" + String.format("%.8f", greedyCoE)
+				+ ", Best random CoE:" + String.format("%.8f", randomCoE) + ", Max gain error:"
+				+ String.format("%.2e", maxError));
+	}
+
+}
@@ -0,0 +1,91 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import main.WindFarmLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * The valid layouts the samples are run on.
+ */
+final class Layouts {
+
+	private Layouts() {
+	}
+
+	/**
+	 * Enlarges the farm of the scenario until jitteredGrid can place n turbines in it.
+	 */
+	static void enlargeFarm(WindScenario ws, int n) {
+		double cell = 2 * 8.001 * ws.R;
+		while ((int) (ws.width / cell) * (int) (ws.height / cell) < 2 * n) {
+			ws.width *= 1.5;
+			ws.height *= 1.5;
+		}
+	}
+
+	/**
+	 * Random turbines, one per cell of a grid of 16R cells, jittered inside their cell so that they always keep
+	 * the security distance, outside of the obstacles.
+	 */
+	static double[][] jitteredGrid(WindScenario ws, int n, Random random) {
+		double interval = 8.001 * ws.R;
+		double cell = 2 * interval;
+		ArrayList<double[]> sites = new ArrayList<>();
+		for (double x = 0; x + cell < ws.width; x += cell) {
+			for (double y = 0; y + cell < ws.height; y += cell) {
+				double px = x + random.nextDouble() * (cell - interval);
+				double py = y + random.nextDouble() * (cell - interval);
+				boolean valid = true;
+				for (double[] obs : ws.obstacles) {
+					if (px > obs[0] && py > obs[1] && px < obs[2] && py < obs[3]) {
+						valid = false;
+					}
+				}
+				if (valid) {
+					sites.add(new double[] { px, py });
+				}
+			}
+		}
+		Collections.shuffle(sites, random);
+		return sites.subList(0, n).toArray(new double[n][]);
+	}
+
+	/**
+	 * Returns the points of a grid of step 8.001 R, the security distance, that are valid for the evaluator,
+	 * column by column. Any subset of them is a valid layout.
+	 */
+	static ArrayList<double[]> gridSites(WindFarmLayoutEvaluator wfle) {
+		double interval = 8.001 * wfle.getTurbineRadius();
+		ArrayList<double[]> sites = new ArrayList<>();
+		for (double x = 0; x <= wfle.getFarmWidth(); x += interval) {
+			for (double y = 0; y <= wfle.getFarmHeight(); y += interval) {
+				if (wfle.checkConstraint(new double[][] { { x, y } })) {
+					sites.add(new double[] { x, y });
+				}
+			}
+		}
+		return sites;
+	}
+
+	/**
+	 * Places n turbines one by one at random valid locations, as the initial layouts of MuLambdaES.
+	 */
+	static double[][] randomLayout(WindFarmLayoutEvaluator wfle, int n, Random random) {
+		double[][] layout = new double[n][];
+		int placed = 0;
+		while (placed < n) {
+			double[] location = { random.nextDouble() * wfle.getFarmWidth(),
+					random.nextDouble() * wfle.getFarmHeight() };
+			layout[placed] = location;
+			if (wfle.checkConstraint(Arrays.copyOf(layout, placed + 1))) {
+				placed++;
+			}
+		}
+		return layout;
+	}
+
+}
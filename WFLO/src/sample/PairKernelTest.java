@@ -0,0 +1,62 @@
+package sample;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Checks that the pair kernel of KusiakLayoutEvaluator gives the same energy outputs, bit for bit, as the
+ * turbine by turbine loop, on random valid layouts of every scenario of the Scenarios directory, and times
+ * both on the largest layout of each scenario.
+ */
+public class PairKernelTest {
+
+	public static void main(String[] args) throws Exception {
+		String directory = args.length > 0 ? args[0] : "Scenarios";
+		int[] sizes = { 2, 30, 300 };
+		Random random = new Random(1);
+
+		File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".xml"));
+		Arrays.sort(files);
+		boolean allSame = true;
+		for (File file : files) {
+			WindScenario ws = new WindScenario(file.getPath());
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+			wfle.setWakeSweep(false);
+
+			boolean same = true;
+			double pairTime = 0;
+			double turbineTime = 0;
+			for (int n : sizes) {
+				double[][] layout;
+				try {
+					layout = Layouts.jitteredGrid(ws, n, random);
+				} catch (IndexOutOfBoundsException e) {
+					break; // the farm cannot hold n turbines
+				}
+				wfle.setPairSymmetric(true);
+				long start = System.nanoTime();
+				wfle.evaluate(layout);
+				pairTime = (System.nanoTime() - start) / 1e6;
+				double[][] pairOutputs = wfle.getEnergyOutputs();
+
+				wfle.setPairSymmetric(false);
+				start = System.nanoTime();
+				wfle.evaluate(layout);
+				turbineTime = (System.nanoTime() - start) / 1e6;
+				double[][] turbineOutputs = wfle.getEnergyOutputs();
+
+				same &= Arrays.deepEquals(pairOutputs, turbineOutputs);
+			}
+			allSame &= same;
+			System.out.println(file.getName() + ", Same outputs:" + same + ", Pairs:" + String.format("%.1f", pairTime)
+					+ "ms, Turbines:" + String.format("%.1f", turbineTime) + "ms");
+		}
+		System.out.println("Same outputs on all scenarios:" + allSame);
+	}
+
+}
@@ -0,0 +1,53 @@
+package sample;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Measures the time of a single evaluation in the serial and parallel modes of KusiakLayoutEvaluator, with
+ * pools of increasing size, and checks that every mode and pool gives exactly the serial cost of energy.
+ */
+public class ParallelEvaluationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 710;
+		int runs = 5;
+
+		WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+		Layouts.enlargeFarm(ws, n);
+		KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+		wfle.initialize(ws);
+		double[][] layout = Layouts.jitteredGrid(ws, n, new Random(1));
+
+		wfle.setParallelMode(KusiakLayoutEvaluator._SERIAL);
+		double serialCoE = wfle.evaluate(layout);
+		System.out.println("Turbines:" + n + ", Serial:" + String.format("%.1f", time(wfle, layout, runs)) + "ms");
+
+		String[] modes = { KusiakLayoutEvaluator._PARALLEL_TURBINES, KusiakLayoutEvaluator._PARALLEL_DIRECTIONS };
+		for (String mode : modes) {
+			wfle.setParallelMode(mode);
+			for (int threads = 1; threads <= Math.max(4, Runtime.getRuntime().availableProcessors()); threads *= 2) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				wfle.setForkJoinPool(pool);
+				double coe = wfle.evaluate(layout);
+				System.out.println("Mode:" + mode + ", Threads:" + threads + ", Same CoE:" + (coe == serialCoE)
+						+ ", Time:" + String.format("%.1f", time(wfle, layout, runs)) + "ms");
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static double time(KusiakLayoutEvaluator wfle, double[][] layout, int runs) {
+		wfle.evaluate(layout);
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			wfle.evaluate(layout);
+		}
+		return (System.nanoTime() - start) / 1e6 / runs;
+	}
+
+}
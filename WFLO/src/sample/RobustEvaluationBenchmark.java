@@ -0,0 +1,64 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import main.EvaluationResult;
+import main.KusiakLayoutEvaluator;
+import main.RobustLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Evaluates random layouts on ks1, ks2 and obs_00 to obs_09 with RobustLayoutEvaluator, checks that the cost
+ * of energy of every scenario is the one of a separate KusiakLayoutEvaluator, and compares the time of the
+ * robust evaluation with the time of the separate ones. The layouts are drawn among the points of a grid
+ * valid on every scenario.
+ */
+public class RobustEvaluationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 10, 30, 100 };
+		int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		Random random = new Random(1);
+
+		ArrayList<WindScenario> scenarios = new ArrayList<>();
+		scenarios.add(new WindScenario("Scenarios/ks1.xml"));
+		scenarios.add(new WindScenario("Scenarios/ks2.xml"));
+		for (int i = 0; i < 10; i++) {
+			scenarios.add(new WindScenario("Scenarios/obs_0" + i + ".xml"));
+		}
+		RobustLayoutEvaluator robust = new RobustLayoutEvaluator(scenarios, RobustLayoutEvaluator._MEAN);
+		KusiakLayoutEvaluator[] separate = new KusiakLayoutEvaluator[scenarios.size()];
+		for (int s = 0; s < separate.length; s++) {
+			separate[s] = new KusiakLayoutEvaluator();
+			separate[s].initialize(scenarios.get(s));
+		}
+		ArrayList<double[]> sites = Layouts.gridSites(robust);
+
+		for (int n : sizes) {
+			boolean same = true;
+			double robustTime = 0;
+			double separateTime = 0;
+			for (int r = 0; r < repeats; r++) {
+				Collections.shuffle(sites, random);
+				double[][] layout = sites.subList(0, n).toArray(new double[n][]);
+
+				long start = System.nanoTime();
+				EvaluationResult[] results = robust.evaluateScenarios(layout, false);
+				long middle = System.nanoTime();
+				for (int s = 0; s < separate.length; s++) {
+					double energyCost = separate[s].evaluate(layout);
+					same &= results[s].isEvaluated() && results[s].getEnergyCost() == energyCost;
+				}
+				long end = System.nanoTime();
+				robustTime += (middle - start) / 1e6;
+				separateTime += (end - middle) / 1e6;
+			}
+			System.out.println("Turbines:" + n + ", Scenarios:" + separate.length + ", Same CoE:" + same
+					+ ", Robust:" + String.format("%.2f", robustTime / repeats) + "ms, Separate:"
+					+ String.format("%.2f", separateTime / repeats) + "ms");
+		}
+	}
+
+}
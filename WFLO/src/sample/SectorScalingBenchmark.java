@@ -0,0 +1,92 @@
+package sample;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Measures how the evaluation time grows with the number of wind sectors. The 15 degree sectors of a scenario
+ * are split into 3 and 15 sectors of the same wind, which gives 5 and 1 degree roses with the same wake free
+ * energy, written as scenario files and read back. For every rose the time to read the scenario and the time
+ * of an evaluation in every energy mode are printed, with the cost of energy, which only changes because the
+ * wakes are computed in more directions. The split sectors share their Weibull factors, so their response
+ * table is integrated as fast as the one of the 24 sectors; a rose with distinct factors per sector takes
+ * proportionally longer to read.
+ */
+public class SectorScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int[] splits = { 1, 3, 15 };
+		String[] modes = { KusiakLayoutEvaluator._EXACT, KusiakLayoutEvaluator._WBLCDF_TABLE,
+				KusiakLayoutEvaluator._RESPONSE_TABLE };
+
+		WindScenario base = new WindScenario("Scenarios/" + scenario + ".xml");
+		double[][] layout = Layouts.jitteredGrid(base, n, new Random(1));
+		for (int split : splits) {
+			File file = File.createTempFile(scenario + "_" + split, ".xml");
+			file.deleteOnExit();
+			writeSplit(base, split, file);
+
+			long start = System.nanoTime();
+			WindScenario ws = new WindScenario(file.getPath());
+			double readTime = (System.nanoTime() - start) / 1e6;
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+
+			StringBuilder line = new StringBuilder();
+			line.append("Sectors:" + ws.thetas.length + ", Read:" + String.format("%.0f", readTime) + "ms");
+			for (String mode : modes) {
+				wfle.setEnergyMode(mode);
+				wfle.evaluate(layout);
+				int repeats = 5;
+				double energyCost = 0;
+				start = System.nanoTime();
+				for (int r = 0; r < repeats; r++) {
+					energyCost = wfle.evaluate(layout);
+				}
+				double time = (System.nanoTime() - start) / 1e6 / repeats;
+				line.append(", " + mode + ":" + String.format("%.1f", time) + "ms CoE "
+						+ String.format("%.8f", energyCost));
+			}
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * Writes the scenario with each sector split into split sectors of the same wind.
+	 */
+	private static void writeSplit(WindScenario ws, int split, File file) throws Exception {
+		try (PrintWriter out = new PrintWriter(file)) {
+			out.println("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+			out.println("<WindField>");
+			out.println("  <Angles>");
+			for (int thets = 0; thets < ws.thetas.length; thets++) {
+				double width = (ws.thetas[thets][1] - ws.thetas[thets][0]) / split;
+				for (int part = 0; part < split; part++) {
+					out.println("    <angle c=\"" + ws.c[thets] + "\" k=\"" + ws.ks[thets] + "\" omega=\""
+							+ ws.omegas[thets] + "\" theta=\"" + (ws.thetas[thets][0] + part * width) + "\"/>");
+				}
+			}
+			out.println("  </Angles>");
+			out.println("  <Obstacles>");
+			for (double[] obstacle : ws.obstacles) {
+				out.println("    <obstacle xmin=\"" + obstacle[0] + "\" ymin=\"" + obstacle[1] + "\" xmax=\""
+						+ obstacle[2] + "\" ymax=\"" + obstacle[3] + "\"/>");
+			}
+			out.println("  </Obstacles>");
+			out.println("  <Parameters>");
+			out.println("     <Width>" + ws.width + "</Width>");
+			out.println("     <Height>" + ws.height + "</Height>");
+			out.println("     <NTurbines>" + ws.nturbines + "</NTurbines>");
+			out.println("     <WakeFreeEnergy>" + ws.wakeFreeEnergy + "</WakeFreeEnergy>");
+			out.println("  </Parameters>");
+			out.println("</WindField>");
+		}
+	}
+
+}
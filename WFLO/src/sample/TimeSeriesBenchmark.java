@@ -0,0 +1,117 @@
+package sample;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.TimeSeriesLayoutEvaluator;
+import main.WindScenario;
+import main.WindTimeSeries;
+
+/**
+ * Draws millions of hourly records from the Weibull distributions of a scenario, writes them as a CSV and as a
+ * binary file, and streams both files into a WindTimeSeries, printing the time and the heap used by the reading.
+ * A layout is then evaluated on the records with TimeSeriesLayoutEvaluator and on the distributions with
+ * KusiakLayoutEvaluator: both wake free ratios only differ by the sampling of the records.
+ */
+public class TimeSeriesBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int records = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+		int n = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		Random random = new Random(1);
+
+		WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+		File csv = File.createTempFile(scenario, ".csv");
+		File binary = File.createTempFile(scenario, ".bin");
+		csv.deleteOnExit();
+		binary.deleteOnExit();
+		writeRecords(ws, records, random, csv, binary);
+		System.out.println("Records:" + records + ", CSV:" + csv.length() / 1000000 + "MB, Binary:"
+				+ binary.length() / 1000000 + "MB");
+
+		WindTimeSeries series = null;
+		for (int format = 0; format < 2; format++) {
+			series = new WindTimeSeries(ws);
+			long heap = usedHeap();
+			long start = System.nanoTime();
+			if (format == 0) {
+				series.readCsv(csv.getPath());
+			} else {
+				series.readBinary(binary.getPath());
+			}
+			double time = (System.nanoTime() - start) / 1e6;
+			System.out.println((format == 0 ? "CSV" : "Binary") + ", Read:" + String.format("%.0f", time)
+					+ "ms, Records:" + series.getRecords() + ", Skipped:" + series.getSkippedRecords()
+					+ ", Heap growth:" + (usedHeap() - heap) / 1000 + "kB");
+		}
+
+		double[][] layout = Layouts.jitteredGrid(ws, n, random);
+		TimeSeriesLayoutEvaluator timeSeries = new TimeSeriesLayoutEvaluator(series);
+		KusiakLayoutEvaluator weibull = new KusiakLayoutEvaluator();
+		weibull.initialize(ws);
+		timeSeries.evaluate(layout);
+		weibull.evaluate(layout);
+		long start = System.nanoTime();
+		timeSeries.evaluate(layout);
+		double timeSeriesTime = (System.nanoTime() - start) / 1e6;
+		start = System.nanoTime();
+		weibull.evaluate(layout);
+		double weibullTime = (System.nanoTime() - start) / 1e6;
+		System.out.println("Turbines:" + n + ", Directions:" + timeSeries.getDirections().length
+				+ ", Time series ratio:" + String.format("%.5f", timeSeries.getWakeFreeRatio()) + " in "
+				+ String.format("%.1f", timeSeriesTime) + "ms, Weibull ratio:"
+				+ String.format("%.5f", weibull.getWakeFreeRatio()) + " in " + String.format("%.1f", weibullTime)
+				+ "ms");
+	}
+
+	/**
+	 * Draws the records: a direction with the weight of its sector, uniformly inside it, and a speed from the
+	 * Weibull distribution of the sector.
+	 */
+	private static void writeRecords(WindScenario ws, int records, Random random, File csv, File binary)
+			throws Exception {
+		double[] cumulative = new double[ws.thetas.length];
+		double total = 0;
+		for (int thets = 0; thets < ws.thetas.length; thets++) {
+			total += (ws.thetas[thets][1] - ws.thetas[thets][0]) * ws.omegas[thets];
+			cumulative[thets] = total;
+		}
+		ByteBuffer record = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		try (BufferedWriter text = new BufferedWriter(new FileWriter(csv));
+				OutputStream data = new BufferedOutputStream(new FileOutputStream(binary))) {
+			text.write("speed,direction\n");
+			for (int r = 0; r < records; r++) {
+				double draw = random.nextDouble() * total;
+				int thets = 0;
+				while (thets < cumulative.length - 1 && cumulative[thets] <= draw) {
+					thets++;
+				}
+				double direction = ws.thetas[thets][0]
+						+ random.nextDouble() * (ws.thetas[thets][1] - ws.thetas[thets][0]);
+				double speed = ws.c[thets] * Math.pow(-Math.log(1 - random.nextDouble()), 1 / ws.ks[thets]);
+				float fspeed = (float) (Math.round(speed * 100) / 100.0);
+				float fdirection = (float) (Math.round(direction * 10) / 10.0);
+				text.write(fspeed + "," + fdirection + "\n");
+				record.clear();
+				record.putFloat(fspeed).putFloat(fdirection);
+				data.write(record.array());
+			}
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,43 @@
+package sample;
+
+import java.util.Random;
+
+import main.KusiakLayoutEvaluator;
+import main.WindScenario;
+
+/**
+ * Measures how the evaluation time grows with the number of turbines, with the waking turbines found by the
+ * direction sweep and by testing every pair, and checks that both give the same cost of energy.
+ */
+public class WakeSweepBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String scenario = args.length > 0 ? args[0] : "competition_3";
+		int[] sizes = { 100, 400, 1600, 5000 };
+		Random random = new Random(1);
+
+		for (int n : sizes) {
+			WindScenario ws = new WindScenario("Scenarios/" + scenario + ".xml");
+			Layouts.enlargeFarm(ws, n);
+			KusiakLayoutEvaluator wfle = new KusiakLayoutEvaluator();
+			wfle.initialize(ws);
+			double[][] layout = Layouts.jitteredGrid(ws, n, random);
+
+			wfle.setWakeSweep(true);
+			wfle.evaluate(layout);
+			long start = System.nanoTime();
+			double sweepCoE = wfle.evaluate(layout);
+			double sweepTime = (System.nanoTime() - start) / 1e6;
+
+			wfle.setWakeSweep(false);
+			start = System.nanoTime();
+			double pairwiseCoE = wfle.evaluate(layout);
+			double pairwiseTime = (System.nanoTime() - start) / 1e6;
+
+			System.out.println("Turbines:" + n + ", Same CoE:" + (sweepCoE == pairwiseCoE) + ", Sweep:"
+					+ String.format("%.1f", sweepTime) + "ms, Pairwise:" + String.format("%.1f", pairwiseTime)
+					+ "ms");
+		}
+	}
+
+}